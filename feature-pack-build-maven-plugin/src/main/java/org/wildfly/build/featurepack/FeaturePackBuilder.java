@@ -16,10 +16,10 @@
 
 package org.wildfly.build.featurepack;
 
-import nu.xom.ParsingException;
 import org.jboss.logging.Logger;
 import org.wildfly.build.ArtifactFileResolver;
 import org.wildfly.build.ArtifactResolver;
+import org.wildfly.build.CachingArtifactFileResolver;
 import org.wildfly.build.Locations;
 import org.wildfly.build.featurepack.model.FeaturePackBuild;
 import org.wildfly.build.common.model.CopyArtifact;
@@ -28,17 +28,21 @@ import org.wildfly.build.pack.model.FeaturePack;
 import org.wildfly.build.pack.model.FeaturePackArtifactResolver;
 import org.wildfly.build.pack.model.FeaturePackDescription;
 import org.wildfly.build.pack.model.FeaturePackDescriptionXMLWriter11;
-import org.wildfly.build.pack.model.FeaturePackFactory;
+import org.wildfly.build.pack.model.FeaturePackRegistry;
 import org.wildfly.build.common.model.FileFilter;
 import org.wildfly.build.pack.model.ModuleIdentifier;
+import org.wildfly.build.util.ArchiveRegistry;
 import org.wildfly.build.util.FileUtils;
+import org.wildfly.build.util.ModuleIndex;
 import org.wildfly.build.util.ModuleParseResult;
 import org.wildfly.build.util.ModuleParser;
+import org.wildfly.build.util.WildcardMatcher;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -52,8 +56,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 /**
  * Task that builds a feature pack. In general this task assumes that some other tool will copy the files from the build
@@ -78,8 +84,12 @@ public class FeaturePackBuilder {
         final Set<ModuleIdentifier> knownModules = new HashSet<>();
         final Map<Artifact, String> artifactVersionMap = new HashMap<>();
         final FeaturePackDescription featurePackDescription = new FeaturePackDescription(build.getDependencies(), build.getConfig(), build.getCopyArtifacts(), build.getFilePermissions());
+        final ArchiveRegistry archiveRegistry = new ArchiveRegistry();
+        // dependency feature packs share artifacts, resolve each once
+        final CachingArtifactFileResolver cachingArtifactFileResolver = CachingArtifactFileResolver.of(artifactFileResolver);
+        final FeaturePackRegistry featurePackRegistry = new FeaturePackRegistry(cachingArtifactFileResolver, new FeaturePackArtifactResolver(Collections.<Artifact>emptyList()), archiveRegistry, 1);
         try {
-            processDependencies(build.getDependencies(), knownModules, new HashSet<String>(), artifactResolver, artifactFileResolver, artifactVersionMap);
+            processDependencies(build.getDependencies(), knownModules, new HashSet<String>(), artifactResolver, featurePackRegistry, artifactVersionMap);
             processModulesDirectory(knownModules, serverDirectory, artifactResolver, artifactVersionMap, errors);
             processVersions(featurePackDescription, artifactResolver, artifactVersionMap);
             processContentsDirectory(build, serverDirectory);
@@ -87,6 +97,8 @@ public class FeaturePackBuilder {
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
+            archiveRegistry.close();
+            cachingArtifactFileResolver.logStatistics();
             if(!errors.isEmpty()) {
                 StringBuilder sb = new StringBuilder();
                 sb.append("Some errors were encountered creating the feature pack\n");
@@ -99,7 +111,7 @@ public class FeaturePackBuilder {
         }
     }
 
-    private static void processDependencies(List<String> dependencies, Set<ModuleIdentifier> knownModules, Set<String> featurePacksProcessed, ArtifactResolver buildArtifactResolver, ArtifactFileResolver artifactFileResolver, final Map<Artifact, String> artifactVersionMap) {
+    private static void processDependencies(List<String> dependencies, Set<ModuleIdentifier> knownModules, Set<String> featurePacksProcessed, ArtifactResolver buildArtifactResolver, FeaturePackRegistry featurePackRegistry, final Map<Artifact, String> artifactVersionMap) {
         for (String dependency : dependencies) {
             if (!featurePacksProcessed.add(dependency)) {
                 continue;
@@ -113,7 +125,7 @@ public class FeaturePackBuilder {
                 throw new RuntimeException("Could not find artifact for " + dependency);
             }
             // load the dependency feature pack
-            FeaturePack dependencyFeaturePack = FeaturePackFactory.createPack(dependencyArtifact, artifactFileResolver, new FeaturePackArtifactResolver(Collections.<Artifact>emptyList()));
+            FeaturePack dependencyFeaturePack = featurePackRegistry.getFeaturePack(dependencyArtifact);
             // put its artifact to the version map
             artifactVersionMap.put(dependencyFeaturePack.getArtifact().getUnversioned(), dependencyFeaturePack.getArtifact().getVersion());
             // process it
@@ -196,6 +208,7 @@ public class FeaturePackBuilder {
             knownModules.add(ModuleIdentifier.fromString("javafx.fxml"));
             knownModules.add(ModuleIdentifier.fromString("org.jboss.modules"));
             final Map<ModuleIdentifier, Set<ModuleIdentifier>> requiredDepds = new HashMap<>();
+            final Map<String, ModuleIndex.Entry> moduleIndex = new TreeMap<>();
             Files.walkFileTree(modulesDir, new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -203,7 +216,12 @@ public class FeaturePackBuilder {
                         return FileVisitResult.CONTINUE;
                     }
                     try {
-                        ModuleParseResult result = ModuleParser.parse(file);
+                        final byte[] bytes = Files.readAllBytes(file);
+                        ModuleParseResult result = ModuleParser.parse(new ByteArrayInputStream(bytes));
+                        final CRC32 crc = new CRC32();
+                        crc.update(bytes, 0, bytes.length);
+                        final String moduleFile = Locations.MODULES + "/" + modulesDir.relativize(file).toString().replace(File.separatorChar, '/');
+                        moduleIndex.put(moduleFile, new ModuleIndex.Entry(moduleFile, crc.getValue(), bytes.length, result));
                         knownModules.add(result.getIdentifier());
                         for (ModuleParseResult.ArtifactName artifactName : result.getArtifacts()) {
 
@@ -231,7 +249,7 @@ public class FeaturePackBuilder {
                             }
                         }
 
-                    } catch (ParsingException e) {
+                    } catch (XMLStreamException e) {
                         throw new RuntimeException(e);
                     }
 
@@ -245,6 +263,10 @@ public class FeaturePackBuilder {
                     errors.add("Missing module " + dep.getKey() + ". Module was required by " + dep.getValue());
                 }
             }
+            // write the modules index, which spares provisioning the parsing of the module files
+            try (OutputStream out = Files.newOutputStream(new File(serverDirectory, Locations.MODULES_INDEX).toPath())) {
+                ModuleIndex.write(moduleIndex.values(), out);
+            }
         }
     }
 
@@ -279,19 +301,17 @@ public class FeaturePackBuilder {
         if (!Files.exists(baseDirPath)){
             return;
         }
+        final WildcardMatcher unixFiles = FileFilter.compile(build.getUnix());
+        final WildcardMatcher windowsFiles = FileFilter.compile(build.getWindows());
         Files.walkFileTree(baseDirPath, new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                 String relative = baseDirPath.relativize(file).toString();
-                for (FileFilter fileFilter : build.getUnix()) {
-                    if (fileFilter.matches(relative)) {
-                        toUnixLineEndings(file);
-                    }
+                if (unixFiles.matches(relative)) {
+                    toUnixLineEndings(file);
                 }
-                for (FileFilter fileFilter : build.getWindows()) {
-                    if (fileFilter.matches(relative)) {
-                        toWindowsLineEndings(file);
-                    }
+                if (windowsFiles.matches(relative)) {
+                    toWindowsLineEndings(file);
                 }
                 return FileVisitResult.CONTINUE;
             }
@@ -28,18 +28,21 @@ import java.util.Map;
  */
 public class MavenProjectArtifactResolver implements ArtifactResolver {
 
-    private final Map<String, Artifact> artifactMap;
+    /**
+     * the artifacts, by their unversioned artifact
+     */
+    private final Map<Artifact, Artifact> artifactMap;
 
     public MavenProjectArtifactResolver(MavenProject mavenProject) {
         this.artifactMap = new HashMap<>();
         for (org.apache.maven.artifact.Artifact mavenProjectArtifact : mavenProject.getArtifacts()) {
             final Artifact artifact = new Artifact(mavenProjectArtifact.getGroupId(), mavenProjectArtifact.getArtifactId(), mavenProjectArtifact.getType(), mavenProjectArtifact.getClassifier(), mavenProjectArtifact.getVersion());
-            artifactMap.put(new Artifact(artifact, null).toString(), artifact);
+            artifactMap.put(artifact.getUnversioned(), artifact);
         }
     }
     @Override
     public Artifact getArtifact(Artifact GACE) {
-        return artifactMap.get(GACE.toString());
+        return artifactMap.get(GACE);
     }
 
 }
@@ -0,0 +1,35 @@
+
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+File repository = new File(basedir, "repo/org/wildfly/build")
+File localRepository = new File(localRepositoryPath, "org/wildfly/build")
+
+// the artifacts resolved in bulk are provisioned
+File provisionedServerDir = new File(basedir, "dist/target/it-artifact-file-repository-dist-1.0-SNAPSHOT")
+for (String name : ["first", "second"]) {
+    String file = "it-artifact-file-repository-${name}-1.0.txt"
+    File copied = new File(provisionedServerDir, "copied-artifacts/${file}")
+    assert copied.exists()
+    assert copied.text == new File(repository, "it-artifact-file-repository-${name}/1.0/${file}").text
+}
+
+// a missing artifact fails the provisioning, once individually resolved
+File buildLog = new File(basedir, "build.log")
+assert buildLog.text.contains("failed to resolve artifact org.wildfly.build:it-artifact-file-repository-missing")
+assert !new File(basedir, "dist-missing/target/it-artifact-file-repository-dist-missing-1.0-SNAPSHOT/copied-artifacts").exists()
+// the other artifacts of the bulk resolution are still resolved
+assert new File(localRepository, "it-artifact-file-repository-third/1.0/it-artifact-file-repository-third-1.0.txt").exists()
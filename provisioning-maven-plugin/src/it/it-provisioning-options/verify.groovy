@@ -0,0 +1,146 @@
+
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.zip.GZIPInputStream
+import java.util.zip.ZipFile
+
+String serverName = "it-provisioning-options-dist-1.0-SNAPSHOT"
+File distTarget = new File(basedir, "dist/target")
+File sourceJar = new File(basedir, "jar/target/it-provisioning-options-jar-1.0-SNAPSHOT.jar")
+File expectedConfig = new File(basedir, "dist/it-expected/" + Server.CONFIG)
+
+// the permissions of the copy artifacts never change the permissions of the linked source
+assert Server.permissions(sourceJar) != "rwx------"
+
+// the incremental provisioning deletes the stale files, and does not write the unchanged files again, which are still marked
+Server incremental = new Server(new File(distTarget, "${serverName}-incremental"), expectedConfig)
+incremental.assertProvisioned()
+assert !incremental.file("copied-artifacts/previous.jar").exists()
+assert incremental.file(Server.MODULE_JAR).text == new File(basedir, "dist/it-marker/${Server.MODULE_JAR}").text
+Properties manifest = new Properties()
+new File(distTarget, "${serverName}-incremental.provisioning-manifest").withInputStream { manifest.load(it) }
+assert manifest.containsKey(Server.CONFIG)
+assert manifest.containsKey(Server.MODULE_JAR)
+assert manifest.containsKey(Server.COPIED_JAR)
+assert !manifest.containsKey("copied-artifacts/previous.jar")
+
+// the files linked by the previous provisioning are copied once linking is no longer requested
+Server linkStrategy = new Server(new File(distTarget, "${serverName}-link-strategy"), expectedConfig)
+linkStrategy.assertProvisioned()
+assert Server.linkCount(linkStrategy.file(Server.MODULE_JAR)) == 1
+assert Arrays.equals(linkStrategy.file(Server.MODULE_JAR).bytes, sourceJar.bytes)
+
+// the files with other permissions than their source are copied, not linked
+Server hardLink = new Server(new File(distTarget, "${serverName}-hard-link"), expectedConfig)
+hardLink.assertProvisioned()
+assert Server.linkCount(hardLink.file(Server.MODULE_JAR)) > 1
+assert Server.linkCount(hardLink.file(Server.COPIED_JAR)) == 1
+
+// reflinks fall back to copies where not supported
+Server reflink = new Server(new File(distTarget, "${serverName}-reflink"), expectedConfig)
+reflink.assertProvisioned()
+assert Arrays.equals(reflink.file(Server.MODULE_JAR).bytes, sourceJar.bytes)
+
+// the archives are written without the server directory, with their entries sorted by name
+assert !new File(distTarget, "${serverName}-zip").exists()
+List<String> zipEntries = []
+ZipFile zipFile = new ZipFile(new File(distTarget, "${serverName}-zip.zip"))
+try {
+    zipEntries.addAll(zipFile.entries().collect { it.name })
+    assert Server.normalize(zipFile.getInputStream(zipFile.getEntry("${serverName}-zip/${Server.CONFIG}")).getText("UTF-8")) == Server.normalize(expectedConfig.getText("UTF-8"))
+} finally {
+    zipFile.close()
+}
+assert zipEntries.contains("${serverName}-zip/${Server.MODULE_JAR}".toString())
+assert zipEntries.contains("${serverName}-zip/${Server.COPIED_JAR}".toString())
+assert zipEntries == zipEntries.toSorted()
+
+assert !new File(distTarget, "${serverName}-tar-gz").exists()
+Map<String, Integer> tarEntries = readTarGz(new File(distTarget, "${serverName}-tar-gz.tar.gz"))
+assert tarEntries["${serverName}-tar-gz/${Server.CONFIG}".toString()] == 0644
+assert tarEntries["${serverName}-tar-gz/${Server.MODULE_JAR}".toString()] == 0644
+assert tarEntries["${serverName}-tar-gz/${Server.COPIED_JAR}".toString()] == 0700
+assert new ArrayList<String>(tarEntries.keySet()) == tarEntries.keySet().toSorted()
+
+/**
+ * @return the modes of the tar entries, by name, in the order of the tar
+ */
+Map<String, Integer> readTarGz(File file) {
+    Map<String, Integer> entries = new LinkedHashMap<>()
+    DataInputStream input = new DataInputStream(new GZIPInputStream(new FileInputStream(file)))
+    try {
+        byte[] header = new byte[512]
+        while (true) {
+            input.readFully(header)
+            if (header.every { it == 0 }) {
+                break
+            }
+            String name = field(header, 0, 100)
+            String prefix = field(header, 345, 155)
+            long size = Long.parseLong(field(header, 124, 12), 8)
+            input.readFully(new byte[(int) ((size + 511).intdiv(512) * 512)])
+            // skips the pax headers
+            if (header[156] != (byte) 'x') {
+                entries[prefix.isEmpty() ? name : prefix + "/" + name] = Integer.parseInt(field(header, 100, 8), 8)
+            }
+        }
+    } finally {
+        input.close()
+    }
+    return entries
+}
+
+String field(byte[] header, int offset, int length) {
+    int end = offset
+    while (end < offset + length && header[end] != 0) {
+        end++
+    }
+    return new String(header, offset, end - offset, "UTF-8").trim()
+}
+
+public class Server {
+    static final String CONFIG = "standalone/configuration/standalone.xml"
+    static final String MODULE_JAR = "modules/org/wildfly/build/it-provisioning-options-jar/main/it-provisioning-options-jar-1.0-SNAPSHOT.jar"
+    static final String COPIED_JAR = "copied-artifacts/it-provisioning-options-jar-1.0-SNAPSHOT.jar"
+    File rootDir
+    File expectedConfig
+    Server(File rootDir, File expectedConfig) {
+        this.rootDir = rootDir
+        this.expectedConfig = expectedConfig
+    }
+    File file(String path) {
+        return new File(rootDir, path)
+    }
+    void assertProvisioned() {
+        assert file(CONFIG).exists()
+        assert org.apache.commons.io.FileUtils.contentEqualsIgnoreEOL(expectedConfig, file(CONFIG), "utf-8")
+        assert file(MODULE_JAR).exists()
+        assert file(COPIED_JAR).exists()
+        assert permissions(file(COPIED_JAR)) == "rwx------"
+    }
+    static String permissions(File file) {
+        return PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath()))
+    }
+    static int linkCount(File file) {
+        return Files.getAttribute(file.toPath(), "unix:nlink") as int
+    }
+    static String normalize(String text) {
+        return text.replace("\r\n", "\n")
+    }
+}
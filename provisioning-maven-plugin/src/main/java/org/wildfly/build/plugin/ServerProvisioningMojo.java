@@ -32,7 +32,10 @@ import org.wildfly.build.AetherArtifactFileResolver;
 import org.wildfly.build.ArtifactResolver;
 import org.wildfly.build.pack.model.DelegatingArtifactResolver;
 import org.wildfly.build.pack.model.FeaturePackArtifactResolver;
+import org.wildfly.build.provisioning.LinkStrategy;
+import org.wildfly.build.provisioning.OutputFormat;
 import org.wildfly.build.provisioning.ServerProvisioner;
+import org.wildfly.build.provisioning.ServerProvisioningOptions;
 import org.wildfly.build.provisioning.model.ServerProvisioningDescription;
 import org.wildfly.build.provisioning.model.ServerProvisioningDescriptionModelParser;
 import org.wildfly.build.util.MapPropertyResolver;
@@ -107,6 +110,32 @@ public class ServerProvisioningMojo extends AbstractMojo {
     @Parameter(alias = "overlay", defaultValue = "false")
     private Boolean overlay = false;
 
+    /**
+     * The max number of modules provisioned concurrently. A value lower than 1 means the number of available processors.
+     */
+    @Parameter(alias = "parallelism", defaultValue = "1", property = "wildfly.provision.parallelism")
+    private int parallelism = 1;
+
+    /**
+     * If true, and the server was previously provisioned, only the files whose source changed are written.
+     */
+    @Parameter(alias = "incremental", defaultValue = "false", property = "wildfly.provision.incremental")
+    private boolean incremental = false;
+
+    /**
+     * How module and copy artifact files are copied from the local repository: COPY, HARD_LINK, or REFLINK. Files which
+     * can't be linked are copied.
+     */
+    @Parameter(alias = "link-strategy", defaultValue = "COPY", property = "wildfly.provision.link-strategy")
+    private String linkStrategy = "COPY";
+
+    /**
+     * The form of the provisioned server: DIRECTORY, ZIP, or TAR_GZ. An archive is written next to the server directory,
+     * named after it, without writing the directory.
+     */
+    @Parameter(alias = "output-format", defaultValue = "DIRECTORY", property = "wildfly.provision.output-format")
+    private String outputFormat = "DIRECTORY";
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         try (FileInputStream configStream = new FileInputStream(new File(configDir, configFile))) {
@@ -132,7 +161,12 @@ public class ServerProvisioningMojo extends AbstractMojo {
             }
 
 
-            ServerProvisioner.build(serverProvisioningDescription, new File(buildName, serverName), overlay, aetherArtifactFileResolver, overrideArtifactResolver);
+            final ServerProvisioningOptions options = new ServerProvisioningOptions();
+            options.setParallelism(parallelism);
+            options.setIncremental(incremental);
+            options.setLinkStrategy(LinkStrategy.of(linkStrategy));
+            options.setOutputFormat(OutputFormat.of(outputFormat));
+            ServerProvisioner.build(serverProvisioningDescription, new File(buildName, serverName), overlay, aetherArtifactFileResolver, overrideArtifactResolver, options);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -59,10 +59,19 @@ public class ProvisionCommand {
             if(Boolean.valueOf(environment.getProperty("system-property-version-overrides", "false"))) {
                 overrideArtifactResolver = new DelegatingArtifactResolver(new PropertiesBasedArtifactResolver(environment), overrideArtifactResolver);
             }
+            final ServerProvisioningOptions options = new ServerProvisioningOptions();
+            // the max number of modules provisioned concurrently, 0 means the number of available processors
+            options.setParallelism(Integer.parseInt(environment.getProperty("parallelism", "1")));
+            // if true only the files changed since the previous provisioning are written
+            options.setIncremental(Boolean.valueOf(environment.getProperty("incremental", "false")));
+            // how artifact files are copied from the local repository, copy, hard-link or reflink
+            options.setLinkStrategy(LinkStrategy.of(environment.getProperty("link-strategy", "copy")));
+            // the form of the provisioned server, directory, zip or tar.gz
+            options.setOutputFormat(OutputFormat.of(environment.getProperty("output-format", "directory")));
             // provision the server
             final File outputDir = new File(buildDir, "wildfly");
-            ServerProvisioner.build(serverProvisioningDescription, outputDir, false, aetherArtifactFileResolver, overrideArtifactResolver);
-            System.out.print("Server provisioning at "+outputDir+" complete.");
+            ServerProvisioner.build(serverProvisioningDescription, outputDir, false, aetherArtifactFileResolver, overrideArtifactResolver, options);
+            System.out.print("Server provisioning at "+options.getOutputFormat().getOutputFile(outputDir)+" complete.");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -26,7 +26,11 @@ import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Eduardo Martins
@@ -58,10 +62,46 @@ public class AetherArtifactFileResolver implements ArtifactFileResolver {
 
     @Override
     public File getArtifactFile(org.wildfly.build.pack.model.Artifact artifact) {
+        return getArtifactFile(toAetherArtifact(artifact));
+    }
+
+    /**
+     * Resolves the artifacts with a single request to the repository system, which downloads the missing artifacts concurrently.
+     * @param artifacts
+     * @return
+     */
+    @Override
+    public Map<org.wildfly.build.pack.model.Artifact, File> getArtifactFiles(Collection<org.wildfly.build.pack.model.Artifact> artifacts) {
+        final List<org.wildfly.build.pack.model.Artifact> artifactList = new ArrayList<>(artifacts);
+        final List<ArtifactRequest> requests = new ArrayList<>(artifactList.size());
+        for (org.wildfly.build.pack.model.Artifact artifact : artifactList) {
+            ArtifactRequest request = new ArtifactRequest();
+            request.setArtifact(toAetherArtifact(artifact));
+            request.setRepositories(remoteRepos);
+            requests.add(request);
+        }
+        List<ArtifactResult> results;
+        try {
+            results = repoSystem.resolveArtifacts(repoSession, requests);
+        } catch (ArtifactResolutionException e) {
+            // keep what was resolved, the artifacts not resolved fail once individually requested
+            results = e.getResults();
+        }
+        final Map<org.wildfly.build.pack.model.Artifact, File> files = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            final ArtifactResult result = results.get(i);
+            if (result.isResolved()) {
+                files.put(artifactList.get(i), result.getArtifact().getFile());
+            }
+        }
+        return files;
+    }
+
+    private static Artifact toAetherArtifact(org.wildfly.build.pack.model.Artifact artifact) {
         final String groupId = artifact.getGroupId();
         final String artifactId = artifact.getArtifactId();
         final String extension = artifact.getPackaging() != null ? artifact.getPackaging() : "jar";
         final String classifier = artifact.getClassifier() != null ? artifact.getClassifier() : "";
-        return getArtifactFile(new DefaultArtifact(groupId, artifactId, classifier, extension, artifact.getVersion()));
+        return new DefaultArtifact(groupId, artifactId, classifier, extension, artifact.getVersion());
     }
 }
@@ -17,6 +17,9 @@
 package org.wildfly.build;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.wildfly.build.pack.model.Artifact;
 
@@ -31,4 +34,22 @@ public interface ArtifactFileResolver {
      * @return
      */
     File getArtifactFile(Artifact artifact);
+
+    /**
+     * Resolves the files of several artifacts at once. Resolvers able to resolve artifacts in bulk should override the
+     * default implementation, which resolves each artifact in turn.
+     *
+     * @param artifacts the artifacts to resolve
+     * @return the files of the resolved artifacts, which may not include the artifacts that could not be resolved
+     */
+    default Map<Artifact, File> getArtifactFiles(Collection<Artifact> artifacts) {
+        final Map<Artifact, File> result = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts) {
+            final File file = getArtifactFile(artifact);
+            if (file != null) {
+                result.put(artifact, file);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build;
+
+import org.jboss.logging.Logger;
+import org.wildfly.build.pack.model.Artifact;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ArtifactFileResolver} which resolves each artifact once through its delegate, and then reuses the resolved
+ * file.
+ * <p>
+ * This class is thread safe, concurrent requests of the same artifact result in a single resolution.
+ */
+public class CachingArtifactFileResolver implements ArtifactFileResolver {
+
+    private static final Logger logger = Logger.getLogger(CachingArtifactFileResolver.class);
+
+    private final ArtifactFileResolver delegate;
+    /**
+     * the resolution of each artifact, so a resolution in progress is waited for, and not done again, without blocking the
+     * resolution of other artifacts
+     */
+    private final ConcurrentMap<Artifact, FutureTask<File>> files = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingArtifactFileResolver(ArtifactFileResolver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Wraps the specified resolver, unless it is already caching.
+     *
+     * @param artifactFileResolver the resolver
+     * @return a caching resolver
+     */
+    public static CachingArtifactFileResolver of(ArtifactFileResolver artifactFileResolver) {
+        if (artifactFileResolver instanceof CachingArtifactFileResolver) {
+            return (CachingArtifactFileResolver) artifactFileResolver;
+        }
+        return new CachingArtifactFileResolver(artifactFileResolver);
+    }
+
+    @Override
+    public File getArtifactFile(final Artifact artifact) {
+        FutureTask<File> resolution = files.get(artifact);
+        if (resolution != null) {
+            hits.incrementAndGet();
+        } else {
+            final FutureTask<File> newResolution = new FutureTask<>(new Callable<File>() {
+                @Override
+                public File call() {
+                    return delegate.getArtifactFile(artifact);
+                }
+            });
+            resolution = files.putIfAbsent(artifact, newResolution);
+            if (resolution == null) {
+                // resolved by this thread, outside of the map
+                misses.incrementAndGet();
+                resolution = newResolution;
+                resolution.run();
+            } else {
+                hits.incrementAndGet();
+            }
+        }
+        return getFile(artifact, resolution);
+    }
+
+    /**
+     * Resolves the artifacts not cached yet with a single bulk resolution by the delegate.
+     *
+     * @param artifacts the artifacts to resolve
+     * @return the files of the resolved artifacts
+     */
+    @Override
+    public Map<Artifact, File> getArtifactFiles(Collection<Artifact> artifacts) {
+        final List<Artifact> unresolved = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            if (!files.containsKey(artifact)) {
+                unresolved.add(artifact);
+            }
+        }
+        if (!unresolved.isEmpty()) {
+            // the artifacts the delegate did not resolve are counted as misses once individually resolved
+            for (Map.Entry<Artifact, File> resolved : delegate.getArtifactFiles(unresolved).entrySet()) {
+                if (resolved.getValue() != null) {
+                    final FutureTask<File> resolution = new FutureTask<>(new Callable<File>() {
+                        @Override
+                        public File call() {
+                            return resolved.getValue();
+                        }
+                    });
+                    resolution.run();
+                    if (files.putIfAbsent(resolved.getKey(), resolution) == null) {
+                        misses.incrementAndGet();
+                    }
+                }
+            }
+        }
+        hits.addAndGet(artifacts.size() - unresolved.size());
+        final Map<Artifact, File> result = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts) {
+            final FutureTask<File> resolution = files.get(artifact);
+            final File file = resolution != null ? getFile(artifact, resolution) : null;
+            if (file != null) {
+                result.put(artifact, file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the resolution of an artifact. Unresolved artifacts (null) and failed resolutions are not cached.
+     */
+    private File getFile(Artifact artifact, FutureTask<File> resolution) {
+        final File file;
+        try {
+            file = resolution.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving artifact " + artifact, e);
+        } catch (ExecutionException e) {
+            files.remove(artifact, resolution);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        if (file == null) {
+            files.remove(artifact, resolution);
+        }
+        return file;
+    }
+
+    /**
+     *
+     * @return the delegate resolver
+     */
+    public ArtifactFileResolver getDelegate() {
+        return delegate;
+    }
+
+    /**
+     *
+     * @return the number of resolutions served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     *
+     * @return the number of resolutions done by the delegate
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Logs the cache statistics, at debug level.
+     */
+    public void logStatistics() {
+        logger.debugf("Artifact file resolution cache: %d artifacts, %d hits, %d misses", files.size(), hits.get(), misses.get());
+    }
+}
@@ -23,6 +23,7 @@ public class Locations {
 
     public static final String VERSIONS_PROPERTIES = "versions.properties";
     public static final String FEATURE_PACK_DESCRIPTION = "wildfly-feature-pack.xml";
+    public static final String MODULES_INDEX = "wildfly-feature-pack-modules.idx";
     public static final String MODULES = "modules";
     public static final String CONTENT = "content";
     public static final String CONFIGURATION = "configuration";
@@ -18,6 +18,7 @@ package org.wildfly.build.common.model;
 
 import org.wildfly.build.configassembly.SubsystemConfig;
 import org.wildfly.build.configassembly.SubsystemsParser;
+import org.wildfly.build.util.ArchiveRegistry;
 import org.wildfly.build.util.InputStreamSource;
 import org.wildfly.build.util.ZipEntryInputStreamSource;
 
@@ -27,7 +28,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  *
@@ -72,13 +72,25 @@ public class ConfigFile {
      * @throws XMLStreamException
      */
     public Map<String, Map<String, SubsystemConfig>> getSubsystemConfigs(File featurePackFile) throws IOException, XMLStreamException {
+        return getSubsystemConfigs(featurePackFile, new ArchiveRegistry(0));
+    }
+
+    /**
+     * Retrieves the subsystems configs.
+     * @param featurePackFile the feature pack's file containing the subsystem configs
+     * @param archiveRegistry the registry used to open the feature pack's file
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public Map<String, Map<String, SubsystemConfig>> getSubsystemConfigs(File featurePackFile, ArchiveRegistry archiveRegistry) throws IOException, XMLStreamException {
         Map<String, Map<String, SubsystemConfig>> subsystems = new HashMap<>();
-        try (ZipFile zip = new ZipFile(featurePackFile)) {
-            ZipEntry zipEntry = zip.getEntry(getSubsystems());
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(featurePackFile)) {
+            ZipEntry zipEntry = archive.getZipFile().getEntry(getSubsystems());
             if (zipEntry == null) {
                 throw new RuntimeException("Feature pack " + featurePackFile + " subsystems file " + getSubsystems() + " not found");
             }
-            InputStreamSource inputStreamSource = new ZipEntryInputStreamSource(featurePackFile, zipEntry);
+            InputStreamSource inputStreamSource = new ZipEntryInputStreamSource(featurePackFile, zipEntry, archiveRegistry);
             SubsystemsParser.parse(inputStreamSource, getProperties(), subsystems);
         }
         return subsystems;
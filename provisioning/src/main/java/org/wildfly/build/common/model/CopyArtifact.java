@@ -15,11 +15,11 @@
  */
 package org.wildfly.build.common.model;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.wildfly.build.ArtifactResolver;
 import org.wildfly.build.pack.model.Artifact;
+import org.wildfly.build.util.WildcardFilterList;
 
 /**
  * Represents an artifact that is copies into a specific location in the final
@@ -34,7 +34,7 @@ public class CopyArtifact {
     private final String toLocation;
     private final boolean extract;
     private final String fromLocation;
-    private final List<FileFilter> filters = new ArrayList<>();
+    private final WildcardFilterList<FileFilter> filters = FileFilter.newList();
 
 
     public CopyArtifact(String artifact, String toLocation, boolean extract, String fromLocation) {
@@ -79,10 +79,9 @@ public class CopyArtifact {
     }
 
     public boolean includeFile(final String path) {
-        for(FileFilter filter : filters) {
-            if(filter.matches(path)) {
-                return filter.isInclude();
-            }
+        final FileFilter filter = filters.getFirstMatch(path);
+        if(filter != null) {
+            return filter.isInclude();
         }
         return true; //default include
     }
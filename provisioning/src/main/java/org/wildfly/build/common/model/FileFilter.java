@@ -15,9 +15,12 @@
  */
 package org.wildfly.build.common.model;
 
-import org.wildfly.build.util.xml.ParsingUtils;
+import org.wildfly.build.util.WildcardFilterList;
+import org.wildfly.build.util.WildcardMatcher;
 
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Stuart Douglas
@@ -25,7 +28,7 @@ import java.util.regex.Pattern;
 public class FileFilter {
 
     private final String patternString;
-    private final Pattern pattern;
+    private final WildcardMatcher matcher;
     private final boolean include;
 
     public FileFilter(String patternString, boolean include) {
@@ -33,7 +36,7 @@ public class FileFilter {
             throw new IllegalArgumentException("null pattern");
         }
         this.patternString = patternString;
-        this.pattern = Pattern.compile(ParsingUtils.wildcardToJavaRegexp(patternString));
+        this.matcher = new WildcardMatcher(Collections.singletonList(patternString));
         this.include = include;
     }
 
@@ -45,13 +48,40 @@ public class FileFilter {
      * Returns true if the file matches the regular expression
      */
     public boolean matches(final String filePath) {
-        return pattern.matcher(filePath).matches();
+        return matcher.matches(filePath);
     }
 
     public boolean isInclude() {
         return include;
     }
 
+    /**
+     *
+     * @return a new empty list of filters, which finds the first filter matching a file with its compiled patterns
+     */
+    public static WildcardFilterList<FileFilter> newList() {
+        return new WildcardFilterList<FileFilter>() {
+            @Override
+            protected String getPattern(FileFilter filter) {
+                return filter.getPattern();
+            }
+        };
+    }
+
+    /**
+     * Compiles the patterns of a list of filters, to find the first filter matching a file in a single pass.
+     *
+     * @param filters the filters
+     * @return the matcher, where the index of a pattern is the index of its filter in the list
+     */
+    public static WildcardMatcher compile(List<FileFilter> filters) {
+        final List<String> patterns = new ArrayList<>(filters.size());
+        for (FileFilter filter : filters) {
+            patterns.add(filter.getPattern());
+        }
+        return new WildcardMatcher(patterns);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
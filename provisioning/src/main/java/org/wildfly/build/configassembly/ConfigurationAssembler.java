@@ -19,20 +19,20 @@ import org.wildfly.build.util.InputStreamSource;
 import org.wildfly.build.util.xml.AttributeValue;
 import org.wildfly.build.util.xml.ElementNode;
 import org.wildfly.build.util.xml.FormattingXMLStreamWriter;
-import org.wildfly.build.util.xml.Node;
 import org.wildfly.build.util.xml.ProcessingInstructionNode;
+import org.wildfly.build.util.xml.XMLFactories;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -49,6 +49,7 @@ public class ConfigurationAssembler {
     private final String templateRootElementName;
     private final File outputFile;
     private final Map<String, Map<String, SubsystemConfig>> subsystemConfigs;
+    private final SubsystemTemplateCache subsystemTemplateCache;
 
     public ConfigurationAssembler(SubsystemInputStreamSources subsystemInputStreamSources, InputStreamSource templateInputStreamSource, String templateRootElementName, Map<String, Map<String, SubsystemConfig>> subsystemConfigs, File outputFile) {
         this.subsystemInputStreamSources = subsystemInputStreamSources;
@@ -56,12 +57,35 @@ public class ConfigurationAssembler {
         this.templateRootElementName = templateRootElementName;
         this.subsystemConfigs = subsystemConfigs;
         this.outputFile = outputFile.getAbsoluteFile();
+        this.subsystemTemplateCache = new SubsystemTemplateCache();
+    }
+
+    /**
+     * Creates an assembler which writes the config to a stream, see {@link #assemble(OutputStream)}.
+     */
+    public ConfigurationAssembler(SubsystemInputStreamSources subsystemInputStreamSources, InputStreamSource templateInputStreamSource, String templateRootElementName, Map<String, Map<String, SubsystemConfig>> subsystemConfigs) {
+        this(subsystemInputStreamSources, templateInputStreamSource, templateRootElementName, subsystemConfigs, new SubsystemTemplateCache());
+    }
+
+    /**
+     * Creates an assembler which writes the config to a stream, see {@link #assemble(OutputStream)}, and takes the parsed
+     * subsystem templates from a cache, which may be shared with the assemblers of other configs.
+     */
+    public ConfigurationAssembler(SubsystemInputStreamSources subsystemInputStreamSources, InputStreamSource templateInputStreamSource, String templateRootElementName, Map<String, Map<String, SubsystemConfig>> subsystemConfigs, SubsystemTemplateCache subsystemTemplateCache) {
+        this.subsystemInputStreamSources = subsystemInputStreamSources;
+        this.templateInputStreamSource = templateInputStreamSource;
+        this.templateRootElementName = templateRootElementName;
+        this.subsystemConfigs = subsystemConfigs;
+        this.outputFile = null;
+        this.subsystemTemplateCache = subsystemTemplateCache;
     }
 
     public void assemble() throws IOException, XMLStreamException {
+        if (outputFile == null) {
+            throw new IllegalStateException("No output file to assemble the config to");
+        }
         TemplateParser templateParser = new TemplateParser(templateInputStreamSource, templateRootElementName);
-        templateParser.parse();
-        populateTemplate(templateParser, subsystemConfigs);
+        boolean withProfiles = populateTemplate(templateParser);
 
         if (outputFile.exists()) {
             outputFile.delete();
@@ -71,19 +95,48 @@ public class ConfigurationAssembler {
                 throw new IllegalStateException("Could not create " + outputFile.getParentFile());
             }
         }
-        FileWriter fileWriter = new FileWriter(outputFile);
-        BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-        FormattingXMLStreamWriter writer = new FormattingXMLStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(bufferedWriter));
+        FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
+        try {
+            write(templateParser, withProfiles, fileOutputStream);
+        } finally {
+            safeClose(fileOutputStream);
+        }
+    }
+
+    /**
+     * Assembles the config, and writes it to the specified stream, encoded in UTF-8, as when written to the output file.
+     *
+     * @param out the output stream, which is not closed
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void assemble(OutputStream out) throws IOException, XMLStreamException {
+        TemplateParser templateParser = new TemplateParser(templateInputStreamSource, templateRootElementName);
+        boolean withProfiles = populateTemplate(templateParser);
+        write(templateParser, withProfiles, out);
+    }
+
+    /**
+     * Parses the template's placeholders, and populates these with the subsystems fragments. The template itself is not
+     * kept in memory, but streamed when written.
+     *
+     * @return false if there are no extensions, and the extensions and profile elements are removed from the config
+     */
+    private boolean populateTemplate(TemplateParser templateParser) throws IOException, XMLStreamException {
+        templateParser.parsePlaceholders();
+        return populateTemplate(templateParser, subsystemConfigs);
+    }
+
+    private void write(TemplateParser templateParser, boolean withProfiles, OutputStream out) throws IOException, XMLStreamException {
+        FormattingXMLStreamWriter writer = new FormattingXMLStreamWriter(XMLFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8"));
         try {
             writer.writeStartDocument();
-            templateParser.getRootNode().marshall(writer);
+            templateParser.marshall(writer, withProfiles);
             writer.writeEndDocument();
+            writer.flush();
         } finally {
-            // XMLStreamWriter does not close inner streams!
+            // the writer does not close the output stream
             safeClose(writer);
-            safeClose(bufferedWriter);
-            // BufferedWriter does, but just in case...
-            safeClose(fileWriter);
         }
     }
 
@@ -101,11 +154,20 @@ public class ConfigurationAssembler {
         }
     }
 
-    private void populateTemplate(TemplateParser templateParser, Map<String, Map<String, SubsystemConfig>> subsystemsConfigs) throws IOException, XMLStreamException{
+    private boolean populateTemplate(TemplateParser templateParser, Map<String, Map<String, SubsystemConfig>> subsystemsConfigs) throws IOException, XMLStreamException{
         final Set<String> extensions = new TreeSet<String>();
         final Map<String, Map<String, ElementNode>> socketBindingsByGroup = new HashMap<String, Map<String, ElementNode>>();
         final Map<String, Map<String, ElementNode>> outboundSocketBindingsByGroup = new HashMap<String, Map<String, ElementNode>>();
         final Map<String, ElementNode> interfaces = new TreeMap<String, ElementNode>();
+        // the templates of all profiles may be parsed concurrently, the template is then populated in order
+        final List<SubsystemConfig> profilesSubsystems = new ArrayList<SubsystemConfig>();
+        for (String profileName : templateParser.getSubsystemPlaceholders().keySet()) {
+            final Map<String, SubsystemConfig> subsystems = subsystemsConfigs.get(profileName);
+            if (subsystems != null) {
+                profilesSubsystems.addAll(subsystems.values());
+            }
+        }
+        subsystemTemplateCache.parseTemplates(templateParser.getRootNode().getNamespace(), profilesSubsystems, subsystemInputStreamSources);
         for (Map.Entry<String, ProcessingInstructionNode> subsystemEntry : templateParser.getSubsystemPlaceholders().entrySet()) {
             final String profileName = subsystemEntry.getKey();
             final String groupName = subsystemEntry.getValue().getDataValue("socket-binding-group", "");
@@ -126,8 +188,7 @@ public class ConfigurationAssembler {
                 if (inputStreamSource == null) {
                     throw new IllegalStateException("Could not resolve '" + subsystem + " Check the module for the extension has been defined.");
                 }
-                final SubsystemParser subsystemParser = new SubsystemParser(templateParser.getRootNode().getNamespace(), subsystem.getSupplement(), inputStreamSource);
-                subsystemParser.parse();
+                final SubsystemParser subsystemParser = subsystemTemplateCache.getParsedTemplate(templateParser.getRootNode().getNamespace(), subsystem.getSupplement(), inputStreamSource);
                 subsystemEntry.getValue().addDelegate(subsystemParser.getSubsystem());
                 extensions.add(subsystemParser.getExtensionModule());
                 for (Map.Entry<String, ElementNode> entry : subsystemParser.getSocketBindings().entrySet()) {
@@ -155,17 +216,6 @@ public class ConfigurationAssembler {
                 extensionElement.addAttribute("module", new AttributeValue(extension));
                 extensionNode.addDelegate(extensionElement);
             }
-        } else {
-            //Delete the extensions element if there are no extensions
-            for (Iterator<Node> it = templateParser.getRootNode().iterateChildren() ; it.hasNext() ; ) {
-                Node node = it.next();
-                if (node instanceof ElementNode) {
-                    ElementNode elementNode = (ElementNode)node;
-                    if (elementNode.getName().equals("extensions") || elementNode.getName().equals("profile")) {
-                        it.remove();
-                    }
-                }
-            }
         }
         if (socketBindingsByGroup.size() > 0 && outboundSocketBindingsByGroup.size() > 0) {
             for (Map.Entry<String, ProcessingInstructionNode> entry : templateParser.getSocketBindingsPlaceHolders().entrySet()) {
@@ -197,5 +247,7 @@ public class ConfigurationAssembler {
                 interfacesNode.addDelegate(interfaceElement);
             }
         }
+        //The extensions and profile elements are not written if there are no extensions
+        return extensions.size() > 0;
     }
 }
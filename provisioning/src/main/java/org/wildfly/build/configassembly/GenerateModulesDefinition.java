@@ -16,10 +16,11 @@
 package org.wildfly.build.configassembly;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -27,7 +28,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import org.jboss.logging.Logger;
@@ -37,6 +37,7 @@ import org.wildfly.build.util.FileInputStreamSource;
 import org.wildfly.build.util.xml.AttributeValue;
 import org.wildfly.build.util.xml.ElementNode;
 import org.wildfly.build.util.xml.FormattingXMLStreamWriter;
+import org.wildfly.build.util.xml.XMLFactories;
 
 /**
  * Generate module directory pattern file as used by FileSet.includes
@@ -168,13 +169,10 @@ public class GenerateModulesDefinition {
         }
 
         String xmloutput = outputFile.getPath();
-        Writer writer = new FileWriter(xmloutput.substring(0, xmloutput.lastIndexOf(".")) + ".xml");
-        try {
-            XMLOutputFactory factory = XMLOutputFactory.newInstance();
-            XMLStreamWriter xmlwriter = new FormattingXMLStreamWriter(factory.createXMLStreamWriter(writer));
+        try (OutputStream out = new FileOutputStream(xmloutput.substring(0, xmloutput.lastIndexOf(".")) + ".xml")) {
+            XMLStreamWriter xmlwriter = new FormattingXMLStreamWriter(XMLFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8"));
             modulesNode.marshall(xmlwriter);
-        } finally {
-            writer.close();
+            xmlwriter.close();
         }
     }
 
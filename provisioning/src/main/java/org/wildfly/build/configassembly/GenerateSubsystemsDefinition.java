@@ -19,16 +19,16 @@ import org.wildfly.build.util.xml.AttributeValue;
 import org.wildfly.build.util.xml.ElementNode;
 import org.wildfly.build.util.xml.FormattingXMLStreamWriter;
 import org.wildfly.build.util.xml.TextNode;
+import org.wildfly.build.util.xml.XMLFactories;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
@@ -121,10 +121,10 @@ public class GenerateSubsystemsDefinition {
             }
         }
 
-        try (Writer writer = new FileWriter(outputFile)) {
-            XMLOutputFactory factory = XMLOutputFactory.newInstance();
-            XMLStreamWriter xmlwriter = new FormattingXMLStreamWriter(factory.createXMLStreamWriter(writer));
+        try (OutputStream out = new FileOutputStream(outputFile)) {
+            XMLStreamWriter xmlwriter = new FormattingXMLStreamWriter(XMLFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8"));
             config.marshall(xmlwriter);
+            xmlwriter.close();
         }
     }
 }
@@ -17,8 +17,8 @@ package org.wildfly.build.configassembly;
 
 import org.wildfly.build.pack.model.ModuleIdentifier;
 import org.wildfly.build.util.InputStreamSource;
+import org.wildfly.build.util.xml.XMLFactories;
 
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
@@ -51,7 +51,7 @@ class ModuleParser {
 
     void parse() throws IOException, XMLStreamException {
         try (InputStream in = inputStreamSource.getInputStream()){
-            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            XMLStreamReader reader = XMLFactories.getInputFactory().createXMLStreamReader(in);
             reader.require(START_DOCUMENT, null, null);
             boolean done = false;
             while (reader.hasNext()) {
@@ -104,7 +104,7 @@ class ModuleParser {
                 slot = reader.getAttributeValue(i);
             }
         }
-        ModuleIdentifier moduleId = new ModuleIdentifier(name, slot);
+        ModuleIdentifier moduleId = new ModuleIdentifier(name, slot).intern();
         dependencies.add(new ModuleDependency(moduleId, optional));
     }
 
@@ -127,7 +127,7 @@ class ModuleParser {
                                 optional = Boolean.parseBoolean(reader.getAttributeValue(i));
                             }
                         }
-                        ModuleIdentifier moduleId = new ModuleIdentifier(name, slot);
+                        ModuleIdentifier moduleId = new ModuleIdentifier(name, slot).intern();
                         dependencies.add(new ModuleDependency(moduleId, optional));
                     }
                     break;
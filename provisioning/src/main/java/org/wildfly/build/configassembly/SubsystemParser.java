@@ -22,8 +22,8 @@ import org.wildfly.build.util.xml.Node;
 import org.wildfly.build.util.xml.NodeParser;
 import org.wildfly.build.util.xml.ParsingUtils;
 import org.wildfly.build.util.xml.ProcessingInstructionNode;
+import org.wildfly.build.util.xml.XMLFactories;
 
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
@@ -86,9 +86,7 @@ class SubsystemParser extends NodeParser {
 
     void parse() throws IOException, XMLStreamException {
         try (InputStream in = inputStreamSource.getInputStream()) {
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
-            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            XMLStreamReader reader = XMLFactories.getInputFactory().createXMLStreamReader(in);
 
             reader.require(START_DOCUMENT, null, null);
             Map<String, String> configAttributes = new HashMap<String, String>();
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.configassembly;
+
+import org.wildfly.build.util.InputStreamSource;
+import org.wildfly.build.util.ParallelTasks;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The subsystem templates parsed for the assembly of configs, so a template used by several configs, or profiles, is
+ * parsed once per supplement.
+ * <p>
+ * Once parsed, with its supplement applied, a template's nodes are not modified by the assembly of a config, which only
+ * adds these as delegates of the config template's placeholders, so the same parsed template is shared by all configs.
+ * <p>
+ * This class is thread safe.
+ */
+public class SubsystemTemplateCache {
+
+    private final ConcurrentMap<Key, ParsedTemplate> templates = new ConcurrentHashMap<>();
+
+    private final int parallelism;
+
+    /**
+     * Creates a cache which parses templates on first use.
+     */
+    public SubsystemTemplateCache() {
+        this(1);
+    }
+
+    /**
+     *
+     * @param parallelism the max number of templates parsed concurrently, when the templates of a config are parsed upfront, values lower than 1 meaning the number of available processors
+     */
+    public SubsystemTemplateCache(int parallelism) {
+        this.parallelism = ParallelTasks.parallelism(parallelism);
+    }
+
+    /**
+     * Parses upfront, and concurrently, the templates of a config's subsystems which are not cached yet. Without
+     * parallelism, or if the config is assembled by a pool thread, i.e. concurrently with other configs, the templates
+     * are parsed on first use instead.
+     *
+     * @param socketBindingNamespace the namespace of the templates socket bindings and interfaces
+     * @param subsystems the config's subsystems
+     * @param subsystemInputStreamSources the template sources, subsystems without a source are skipped
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    void parseTemplates(final String socketBindingNamespace, Collection<SubsystemConfig> subsystems, SubsystemInputStreamSources subsystemInputStreamSources) throws IOException, XMLStreamException {
+        if (parallelism <= 1 || ParallelTasks.isPoolThread()) {
+            return;
+        }
+        final Set<Key> keys = new HashSet<>();
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (final SubsystemConfig subsystem : subsystems) {
+            final InputStreamSource inputStreamSource = subsystemInputStreamSources.getInputStreamSource(subsystem.getSubsystem());
+            if (inputStreamSource == null) {
+                continue;
+            }
+            final Key key = new Key(socketBindingNamespace, subsystem.getSupplement(), inputStreamSource);
+            if (templates.containsKey(key) || !keys.add(key)) {
+                continue;
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    getParsedTemplate(socketBindingNamespace, subsystem.getSupplement(), inputStreamSource);
+                    return null;
+                }
+            });
+        }
+        try {
+            ParallelTasks.run("subsystem-template-parsing", parallelism, tasks);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     *
+     * @param socketBindingNamespace the namespace of the template's socket bindings and interfaces
+     * @param supplementName the supplement applied to the template, null for the template's default
+     * @param inputStreamSource the template source
+     * @return the parsed template
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    SubsystemParser getParsedTemplate(String socketBindingNamespace, String supplementName, InputStreamSource inputStreamSource) throws IOException, XMLStreamException {
+        final Key key = new Key(socketBindingNamespace, supplementName, inputStreamSource);
+        ParsedTemplate parsedTemplate = templates.get(key);
+        if (parsedTemplate == null) {
+            parsedTemplate = new ParsedTemplate(key);
+            final ParsedTemplate existing = templates.putIfAbsent(key, parsedTemplate);
+            if (existing != null) {
+                parsedTemplate = existing;
+            }
+        }
+        return parsedTemplate.get();
+    }
+
+    /**
+     * A template parsed on first use, by a single thread.
+     */
+    private static class ParsedTemplate {
+
+        private final Key key;
+        private SubsystemParser subsystemParser;
+
+        private ParsedTemplate(Key key) {
+            this.key = key;
+        }
+
+        private synchronized SubsystemParser get() throws IOException, XMLStreamException {
+            if (subsystemParser == null) {
+                final SubsystemParser subsystemParser = new SubsystemParser(key.socketBindingNamespace, key.supplementName, key.inputStreamSource);
+                subsystemParser.parse();
+                this.subsystemParser = subsystemParser;
+            }
+            return subsystemParser;
+        }
+    }
+
+    private static class Key {
+
+        private final String socketBindingNamespace;
+        private final String supplementName;
+        private final InputStreamSource inputStreamSource;
+
+        private Key(String socketBindingNamespace, String supplementName, InputStreamSource inputStreamSource) {
+            this.socketBindingNamespace = socketBindingNamespace;
+            this.supplementName = supplementName;
+            this.inputStreamSource = inputStreamSource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (socketBindingNamespace != null ? !socketBindingNamespace.equals(key.socketBindingNamespace) : key.socketBindingNamespace != null) return false;
+            if (supplementName != null ? !supplementName.equals(key.supplementName) : key.supplementName != null) return false;
+            return inputStreamSource.equals(key.inputStreamSource);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = socketBindingNamespace != null ? socketBindingNamespace.hashCode() : 0;
+            result = 31 * result + (supplementName != null ? supplementName.hashCode() : 0);
+            result = 31 * result + inputStreamSource.hashCode();
+            return result;
+        }
+    }
+}
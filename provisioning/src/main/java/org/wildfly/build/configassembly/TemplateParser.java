@@ -20,16 +20,26 @@ import org.wildfly.build.util.xml.ElementNode;
 import org.wildfly.build.util.xml.NodeParser;
 import org.wildfly.build.util.xml.ParsingUtils;
 import org.wildfly.build.util.xml.ProcessingInstructionNode;
+import org.wildfly.build.util.xml.XMLFactories;
 
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.COMMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.PROCESSING_INSTRUCTION;
 import static javax.xml.stream.XMLStreamConstants.START_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
 
 /**
  *
@@ -50,6 +60,10 @@ public class TemplateParser extends NodeParser {
     private final Map<String, ProcessingInstructionNode> subsystemPlaceHolders = new HashMap<String, ProcessingInstructionNode>();
     private final Map<String, ProcessingInstructionNode> socketBindingsPlaceHolder = new HashMap<String, ProcessingInstructionNode>();
     private ProcessingInstructionNode interfacesPlaceHolder;
+    /**
+     * the placeholders in the template's order, if parsed without building the template's tree
+     */
+    private final List<ProcessingInstructionNode> placeholders = new ArrayList<ProcessingInstructionNode>();
 
     public TemplateParser(InputStreamSource inputStreamSource, String rootElementName) {
         this.inputStreamSource = inputStreamSource;
@@ -78,17 +92,143 @@ public class TemplateParser extends NodeParser {
 
     public void parse() throws IOException, XMLStreamException {
         try (InputStream in = inputStreamSource.getInputStream()) {
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
-            XMLStreamReader reader = factory.createXMLStreamReader(in);
-
-            reader.require(START_DOCUMENT, null, null);
-            ParsingUtils.getNextElement(reader, rootElementName, null, false);
+            XMLStreamReader reader = createReader(in);
             root = super.parseNode(reader, rootElementName);
 
         }
     }
 
+    /**
+     * Parses the template's placeholders only, without building the template's tree, which is then streamed by
+     * {@link #marshall(XMLStreamWriter, boolean)} once the placeholders are populated. The root node has no children.
+     *
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void parsePlaceholders() throws IOException, XMLStreamException {
+        try (InputStream in = inputStreamSource.getInputStream()) {
+            XMLStreamReader reader = createReader(in);
+            root = createNodeWithAttributesAndNs(reader, null);
+            // only the ancestors of the current element are kept, for the placeholders validation
+            ElementNode currentNode = root;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case START_ELEMENT:
+                        currentNode = createNodeWithAttributesAndNs(reader, currentNode);
+                        break;
+                    case END_ELEMENT:
+                        currentNode = currentNode.getParent();
+                        if (currentNode == null) {
+                            return;
+                        }
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        placeholders.add(parseProcessingInstruction(reader, currentNode));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            throw new XMLStreamException("Element was not terminated", reader.getLocation());
+        }
+    }
+
+    /**
+     * Streams the template, parsed with {@link #parsePlaceholders()}, to a writer, copying the template's events and
+     * writing the populated placeholders content in place of these. The output is the same as when marshalling the
+     * template's tree.
+     *
+     * @param writer the writer
+     * @param withProfiles false if the root's extensions and profile elements are removed, i.e. there are no extensions
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void marshall(XMLStreamWriter writer, boolean withProfiles) throws IOException, XMLStreamException {
+        try (InputStream in = inputStreamSource.getInputStream()) {
+            XMLStreamReader reader = createReader(in);
+            final Iterator<ProcessingInstructionNode> placeholders = this.placeholders.iterator();
+            ElementNode currentNode = createNodeWithAttributesAndNs(reader, null);
+            // the current element, if its start is not written yet, i.e. whether it is empty is not known yet
+            ElementNode pendingNode = currentNode;
+            int skippedDepth = 0;
+            while (reader.hasNext()) {
+                final int type = reader.next();
+                if (skippedDepth > 0) {
+                    if (type == START_ELEMENT) {
+                        skippedDepth++;
+                    } else if (type == END_ELEMENT) {
+                        skippedDepth--;
+                    } else if (type == PROCESSING_INSTRUCTION) {
+                        placeholders.next();
+                    }
+                    continue;
+                }
+                switch (type) {
+                    case START_ELEMENT:
+                        if (!withProfiles && currentNode.getParent() == null && (reader.getLocalName().equals("extensions") || reader.getLocalName().equals("profile"))) {
+                            skippedDepth = 1;
+                            break;
+                        }
+                        pendingNode = marshallStart(writer, pendingNode);
+                        currentNode = createNodeWithAttributesAndNs(reader, currentNode);
+                        pendingNode = currentNode;
+                        break;
+                    case END_ELEMENT:
+                        if (pendingNode != null) {
+                            pendingNode.marshallStart(writer, true);
+                            pendingNode = null;
+                        } else {
+                            writer.writeEndElement();
+                        }
+                        currentNode = currentNode.getParent();
+                        if (currentNode == null) {
+                            return;
+                        }
+                        break;
+                    case COMMENT:
+                        pendingNode = marshallStart(writer, pendingNode);
+                        writer.writeComment(reader.getText());
+                        break;
+                    case CDATA:
+                        pendingNode = marshallStart(writer, pendingNode);
+                        writer.writeCData(reader.getText());
+                        break;
+                    case CHARACTERS:
+                        if (!reader.isWhiteSpace()) {
+                            pendingNode = marshallStart(writer, pendingNode);
+                            writer.writeCharacters(reader.getText());
+                        }
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        final ProcessingInstructionNode placeholder = placeholders.next();
+                        if (placeholder.hasContent()) {
+                            pendingNode = marshallStart(writer, pendingNode);
+                            placeholder.marshall(writer);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            throw new XMLStreamException("Element was not terminated", reader.getLocation());
+        }
+    }
+
+    private static ElementNode marshallStart(XMLStreamWriter writer, ElementNode pendingNode) throws XMLStreamException {
+        if (pendingNode != null) {
+            pendingNode.marshallStart(writer, false);
+        }
+        return null;
+    }
+
+    private XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = XMLFactories.getInputFactory().createXMLStreamReader(in);
+
+        reader.require(START_DOCUMENT, null, null);
+        ParsingUtils.getNextElement(reader, rootElementName, null, false);
+        return reader;
+    }
+
     @Override
     protected ProcessingInstructionNode parseProcessingInstruction(XMLStreamReader reader, ElementNode parent) throws XMLStreamException {
         ProcessingInstructionNode node = null;
@@ -4,6 +4,7 @@ import java.util.Comparator;
 import java.util.Objects;
 
 import org.wildfly.build.logger.ProvisioningLogger;
+import org.wildfly.build.util.Interner;
 
 /**
  * A representation of a maven GAV, with the version being optional.
@@ -18,13 +19,22 @@ import org.wildfly.build.logger.ProvisioningLogger;
  * <p>
  * This is because unlike a normal maven GAV the version is optional, so group:artifact:type and group:artifact:version
  * are ambiguous.
+ * <p>
+ * Artifacts are immutable, the hash code is computed once, and the string form and the unversioned artifact on first
+ * use. The artifacts parsed, and the unversioned artifacts, are the canonical instances, see {@link #intern()}.
  */
 public class Artifact implements Comparable<Artifact> {
+
+    private static final Interner<Artifact> INTERNER = new Interner<>();
+
     private final String groupId;
     private final String artifactId;
     private final String packaging;
     private final String classifier;
     private final String version;
+    private final int hashCode;
+    private String string;
+    private Artifact unversioned;
 
     public Artifact(String groupId, String artifactId, String packaging, String classifier, String version) {
         if (groupId == null) {
@@ -50,26 +60,43 @@ public class Artifact implements Comparable<Artifact> {
         } else {
             this.version = null;
         }
+        int result = this.groupId.hashCode();
+        result = 31 * result + this.artifactId.hashCode();
+        result = 31 * result + (this.classifier != null ? this.classifier.hashCode() : 0);
+        result = 31 * result + (this.packaging != null ? this.packaging.hashCode() : 0);
+        result = 31 * result + (this.version != null ? this.version.hashCode() : 0);
+        this.hashCode = result;
     }
 
     public Artifact(Artifact artifact, String newVersion) {
         this(artifact.groupId, artifact.artifactId, artifact.packaging, artifact.classifier, newVersion);
     }
 
+    /**
+     *
+     * @param description the artifact's string form
+     * @return the canonical instance of the parsed artifact
+     */
     public static Artifact parse(String description) {
         String[] parts = description.split(":");
+        final Artifact artifact;
         switch (parts.length) {
             case 2:
-                return new Artifact(parts[0], parts[1], null, null, null);
+                artifact = new Artifact(parts[0], parts[1], null, null, null);
+                break;
             case 3:
-                return new Artifact(parts[0], parts[1], parts[2], null, null);
+                artifact = new Artifact(parts[0], parts[1], parts[2], null, null);
+                break;
             case 4:
-                return new Artifact(parts[0], parts[1], parts[2], parts[3], null);
+                artifact = new Artifact(parts[0], parts[1], parts[2], parts[3], null);
+                break;
             case 5:
-                return new Artifact(parts[0], parts[1], parts[2], parts[3], parts[4]);
+                artifact = new Artifact(parts[0], parts[1], parts[2], parts[3], parts[4]);
+                break;
             default:
                 throw ProvisioningLogger.ROOT_LOGGER.cannotParseArtifact(description);
         }
+        return artifact.intern();
     }
 
     public String getGroupId() {
@@ -96,8 +123,23 @@ public class Artifact implements Comparable<Artifact> {
         if(version == null) {
             return this;
         }
-        return new Artifact(this, null);
+        Artifact unversioned = this.unversioned;
+        if (unversioned == null) {
+            unversioned = new Artifact(this, null).intern();
+            this.unversioned = unversioned;
+        }
+        return unversioned;
+    }
+
+    /**
+     * Retrieves the canonical instance of this artifact, so equal artifacts, e.g. of many modules, share one instance.
+     *
+     * @return the canonical instance equal to this artifact
+     */
+    public Artifact intern() {
+        return INTERNER.intern(this);
     }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -105,6 +147,7 @@ public class Artifact implements Comparable<Artifact> {
 
         Artifact artifact = (Artifact) o;
 
+        if (hashCode != artifact.hashCode) return false;
         if (groupId != null ? !groupId.equals(artifact.groupId) : artifact.groupId != null) return false;
         if (artifactId != null ? !artifactId.equals(artifact.artifactId) : artifact.artifactId != null)
             return false;
@@ -117,12 +160,7 @@ public class Artifact implements Comparable<Artifact> {
 
     @Override
     public int hashCode() {
-        int result = groupId != null ? groupId.hashCode() : 0;
-        result = 31 * result + (artifactId != null ? artifactId.hashCode() : 0);
-        result = 31 * result + (classifier != null ? classifier.hashCode() : 0);
-        result = 31 * result + (packaging != null ? packaging.hashCode() : 0);
-        result = 31 * result + (version != null ? version.hashCode() : 0);
-        return result;
+        return hashCode;
     }
 
     public String toJBossModulesString() {
@@ -135,6 +173,15 @@ public class Artifact implements Comparable<Artifact> {
 
     @Override
     public String toString() {
+        String string = this.string;
+        if (string == null) {
+            string = createString();
+            this.string = string;
+        }
+        return string;
+    }
+
+    private String createString() {
         StringBuilder sb = new StringBuilder(groupId).append(':').append(artifactId);
         int pc = 0;
         if (packaging != null) {
@@ -16,21 +16,24 @@
 
 package org.wildfly.build.pack.model;
 
+import org.jboss.logging.Logger;
 import org.wildfly.build.ArtifactFileResolver;
 import org.wildfly.build.ArtifactResolver;
+import org.wildfly.build.Locations;
 import org.wildfly.build.common.model.ConfigFile;
 import org.wildfly.build.configassembly.SubsystemConfig;
+import org.wildfly.build.util.ArchiveEntryIndex;
+import org.wildfly.build.util.ArchiveRegistry;
+import org.wildfly.build.util.ModuleIndex;
 import org.wildfly.build.util.ModuleParseResult;
 import org.wildfly.build.util.ModuleParser;
-import org.wildfly.build.util.ZipFileSubsystemInputStreamSources;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayDeque;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,8 +41,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Represents a Wildfly feature pack. This is used by both the build and provisioning tools,
@@ -52,6 +55,8 @@ import java.util.zip.ZipEntry;
  */
 public class FeaturePack {
 
+    private static final Logger logger = Logger.getLogger(FeaturePack.class);
+
     private final File featurePackFile;
     private final Artifact featurePackArtifact;
     private final FeaturePackDescription description;
@@ -60,8 +65,14 @@ public class FeaturePack {
     private final List<String> contentFiles;
     private final List<FeaturePack> dependencies;
     private final ArtifactResolver artifactResolver;
+    private final ArchiveRegistry archiveRegistry;
 
     public FeaturePack(File featurePackFile, Artifact featurePackArtifact, FeaturePackDescription description, List<FeaturePack> dependencies, ArtifactResolver artifactResolver, List<String> configurationFiles, List<String> modulesFiles, List<String> contentFiles) {
+        this(featurePackFile, featurePackArtifact, description, dependencies, artifactResolver, configurationFiles, modulesFiles, contentFiles, new ArchiveRegistry(0));
+    }
+
+    public FeaturePack(File featurePackFile, Artifact featurePackArtifact, FeaturePackDescription description, List<FeaturePack> dependencies, ArtifactResolver artifactResolver, List<String> configurationFiles, List<String> modulesFiles, List<String> contentFiles, ArchiveRegistry archiveRegistry) {
+        this.archiveRegistry = archiveRegistry;
         this.featurePackFile = featurePackFile;
         this.featurePackArtifact = featurePackArtifact;
         this.description = description;
@@ -104,22 +115,42 @@ public class FeaturePack {
         return contentFiles;
     }
 
+    /**
+     *
+     * @return the registry used to open the feature pack's file, and the files of its module artifacts
+     */
+    public ArchiveRegistry getArchiveRegistry() {
+        return archiveRegistry;
+    }
+
     private Map<ModuleIdentifier, Module> featurePackModules;
 
     private Map<ModuleIdentifier, Module> featurePackAndDependenciesModules;
 
+    private SubsystemModules subsystemModules;
+
+    private ModuleGraph moduleGraph;
+
     private static final String MODULE_XML_ENTRY_NAME_SUFIX = "/module.xml";
 
     public synchronized Map<ModuleIdentifier, Module> getFeaturePackModules() {
         if (featurePackModules == null) {
             featurePackModules = new HashMap<>();
-            try (JarFile jar = new JarFile(featurePackFile)) {
+            try (ArchiveRegistry.Archive archive = archiveRegistry.open(featurePackFile)) {
+                final ZipFile jar = archive.getZipFile();
+                final Map<String, ModuleIndex.Entry> moduleIndex = readModuleIndex(jar);
                 // collect modules from entries named */module.xml
                 for (String moduleFile : modulesFiles) {
                     if (moduleFile.endsWith(MODULE_XML_ENTRY_NAME_SUFIX)) {
                         ZipEntry entry = jar.getEntry(moduleFile);
-                        // parse the module file
-                        ModuleParseResult moduleParseResult = ModuleParser.parse(jar.getInputStream(entry));
+                        // use the indexed module if built from the same module file, otherwise parse the module file
+                        final ModuleIndex.Entry indexEntry = moduleIndex.get(moduleFile);
+                        final ModuleParseResult moduleParseResult;
+                        if (indexEntry != null && indexEntry.matches(entry)) {
+                            moduleParseResult = indexEntry.getModuleParseResult();
+                        } else {
+                            moduleParseResult = ModuleParser.parse(jar.getInputStream(entry));
+                        }
                         featurePackModules.put(moduleParseResult.getIdentifier(), new Module(this, moduleFile, moduleParseResult));
                     }
                 }
@@ -131,6 +162,18 @@ public class FeaturePack {
         return featurePackModules;
     }
 
+    private Map<String, ModuleIndex.Entry> readModuleIndex(ZipFile jar) {
+        final ZipEntry entry = jar.getEntry(Locations.MODULES_INDEX);
+        if (entry != null) {
+            try (InputStream in = jar.getInputStream(entry)) {
+                return ModuleIndex.read(in);
+            } catch (IOException e) {
+                logger.debugf(e, "Ignoring invalid module index of feature pack %s", featurePackFile);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
     public synchronized Map<ModuleIdentifier, Module> getFeaturePackAndDependenciesModules() {
         if (featurePackAndDependenciesModules == null) {
             featurePackAndDependenciesModules = new HashMap<>(getFeaturePackModules());
@@ -146,15 +189,73 @@ public class FeaturePack {
         return featurePackAndDependenciesModules;
     }
 
+    /**
+     *
+     * @return the dependency graph of the feature pack and dependencies modules
+     */
+    synchronized ModuleGraph getModuleGraph() {
+        if (moduleGraph == null) {
+            moduleGraph = new ModuleGraph(this, getFeaturePackAndDependenciesModules());
+        }
+        return moduleGraph;
+    }
+
     public Module getSubsystemModule(String subsystem, ArtifactFileResolver artifactFileResolver) throws IOException {
-        ZipFileSubsystemInputStreamSources inputStreamSources = new ZipFileSubsystemInputStreamSources();
-        for(Module module : getFeaturePackAndDependenciesModules().values()) {
-            if (inputStreamSources.addSubsystemFileSourceFromModule(subsystem, module, artifactFileResolver)) {
-                // module has the subsystem config file
-                return module;
+        final SubsystemModules subsystemModules = getSubsystemModules(artifactFileResolver);
+        final Module module = subsystemModules.modules.get(subsystem);
+        if (module == null && subsystemModules.failure != null) {
+            // the module may be the one whose artifacts failed to resolve
+            throw subsystemModules.failure;
+        }
+        return module;
+    }
+
+    private synchronized SubsystemModules getSubsystemModules(ArtifactFileResolver artifactFileResolver) throws IOException {
+        if (subsystemModules == null) {
+            subsystemModules = new SubsystemModules(artifactFileResolver);
+        }
+        return subsystemModules;
+    }
+
+    /**
+     * The index of the modules which include subsystem templates, built once by scanning the artifacts of the feature
+     * pack and dependencies modules, in the same order as a direct lookup would.
+     */
+    private class SubsystemModules {
+
+        private final Map<String, Module> modules = new HashMap<>();
+        private RuntimeException failure;
+
+        private SubsystemModules(ArtifactFileResolver artifactFileResolver) throws IOException {
+            for (Module module : getFeaturePackAndDependenciesModules().values()) {
+                for (ModuleParseResult.ArtifactName artifactName : module.getModuleParseResult().getArtifacts()) {
+                    final File artifactFile;
+                    try {
+                        final Artifact artifact = module.getFeaturePack().getArtifactResolver().getArtifact(artifactName.getArtifact());
+                        if (artifact == null) {
+                            throw new RuntimeException("Could not resolve module resource artifact " + artifactName.getArtifactCoords() + " for feature pack " + module.getFeaturePack().getFeaturePackFile());
+                        }
+                        artifactFile = artifactFileResolver.getArtifactFile(artifact);
+                    } catch (RuntimeException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                        continue;
+                    }
+                    if (artifactFile == null) {
+                        continue;
+                    }
+                    for (String entryName : archiveRegistry.getIndexedEntries(artifactFile)) {
+                        if (entryName.startsWith(ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR) && entryName.length() > ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR.length()) {
+                            final String subsystem = entryName.substring(ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR.length());
+                            if (!modules.containsKey(subsystem)) {
+                                modules.put(subsystem, module);
+                            }
+                        }
+                    }
+                }
             }
         }
-        return null;
     }
 
     /**
@@ -166,17 +267,17 @@ public class FeaturePack {
     public Set<String> getSubsystems() throws IOException, XMLStreamException {
         final Set<String> result = new HashSet<>();
         for (ConfigFile configFile : description.getConfig().getDomainConfigFiles()) {
-            for (Map<String, SubsystemConfig> subsystems : configFile.getSubsystemConfigs(featurePackFile).values()) {
+            for (Map<String, SubsystemConfig> subsystems : configFile.getSubsystemConfigs(featurePackFile, archiveRegistry).values()) {
                 result.addAll(subsystems.keySet());
             }
         }
         for (ConfigFile configFile : description.getConfig().getStandaloneConfigFiles()) {
-            for (Map<String, SubsystemConfig> subsystems : configFile.getSubsystemConfigs(featurePackFile).values()) {
+            for (Map<String, SubsystemConfig> subsystems : configFile.getSubsystemConfigs(featurePackFile, archiveRegistry).values()) {
                 result.addAll(subsystems.keySet());
             }
         }
         for (ConfigFile configFile : description.getConfig().getHostConfigFiles()) {
-            for (Map<String, SubsystemConfig> subsystems : configFile.getSubsystemConfigs(featurePackFile).values()) {
+            for (Map<String, SubsystemConfig> subsystems : configFile.getSubsystemConfigs(featurePackFile, archiveRegistry).values()) {
                 result.addAll(subsystems.keySet());
             }
         }
@@ -252,25 +353,7 @@ public class FeaturePack {
          * @return
          */
         public Map<ModuleIdentifier, Module> getDependencies() {
-            Map<ModuleIdentifier, Module> featurePackAndDependenciesModules = featurePack.getFeaturePackAndDependenciesModules();
-            Map<ModuleIdentifier, Module> result = new HashMap<>();
-            Deque<ModuleParseResult.ModuleDependency> remaining = new ArrayDeque<>(moduleParseResult.getDependencies());
-            while (!remaining.isEmpty()) {
-                ModuleParseResult.ModuleDependency moduleDependency = remaining.pop();
-                ModuleIdentifier moduleIdentifier = moduleDependency.getModuleId();
-                Module module = featurePackAndDependenciesModules.get(moduleIdentifier);
-                if (module == null) {
-                    if (!moduleDependency.isOptional()) {
-                        throw new IllegalStateException("Module " + moduleIdentifier + " not found in feature pack " + featurePack + " and dependencies");
-                    }
-                } else {
-                    if (!result.containsKey(moduleIdentifier)) {
-                        result.put(moduleIdentifier, module);
-                        remaining.addAll(module.getModuleParseResult().getDependencies());
-                    }
-                }
-            }
-            return result;
+            return featurePack.getModuleGraph().getDependencies(this);
         }
     }
 }
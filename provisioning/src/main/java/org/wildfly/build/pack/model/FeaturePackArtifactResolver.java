@@ -27,17 +27,20 @@ import org.wildfly.build.ArtifactResolver;
  */
 public class FeaturePackArtifactResolver implements ArtifactResolver {
 
-    private final Map<String, Artifact> artifactMap;
+    /**
+     * the artifacts, by their unversioned artifact
+     */
+    private final Map<Artifact, Artifact> artifactMap;
 
     public FeaturePackArtifactResolver(Collection<Artifact> artifactVersions) {
         this.artifactMap = new HashMap<>();
         for (Artifact artifact : artifactVersions) {
-            artifactMap.put(artifact.getUnversioned().toString(), artifact);
+            artifactMap.put(artifact.getUnversioned(), artifact);
         }
     }
 
     @Override
     public Artifact getArtifact(Artifact GACE) {
-        return artifactMap.get(GACE.toString());
+        return artifactMap.get(GACE);
     }
 }
@@ -321,7 +321,7 @@ class FeaturePackDescriptionXMLParser11 implements XMLElementReader<FeaturePackD
             throw ParsingUtils.missingAttributes(reader.getLocation(), required);
         }
         ParsingUtils.parseNoContent(reader);
-        return new Artifact(groupId, artifactId, extension, classifier, version);
+        return new Artifact(groupId, artifactId, extension, classifier, version).intern();
     }
 
 }
@@ -21,13 +21,13 @@ import org.wildfly.build.common.model.FilePermissionsXMLWriter10;
 import org.wildfly.build.util.xml.AttributeValue;
 import org.wildfly.build.util.xml.ElementNode;
 import org.wildfly.build.util.xml.FormattingXMLStreamWriter;
+import org.wildfly.build.util.xml.XMLFactories;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Set;
 
@@ -53,16 +53,12 @@ public class FeaturePackDescriptionXMLWriter11 {
         ConfigXMLWriter11.INSTANCE.write(featurePackDescription.getConfig(), featurePackElementNode);
         CopyArtifactsXMLWriter10.INSTANCE.write(featurePackDescription.getCopyArtifacts(), featurePackElementNode);
         FilePermissionsXMLWriter10.INSTANCE.write(featurePackDescription.getFilePermissions(), featurePackElementNode);
-        FormattingXMLStreamWriter writer = new FormattingXMLStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(new BufferedWriter(new FileWriter(outputFile))));
-        try {
+        try (OutputStream out = new FileOutputStream(outputFile)) {
+            final FormattingXMLStreamWriter writer = new FormattingXMLStreamWriter(XMLFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8"));
             writer.writeStartDocument();
             featurePackElementNode.marshall(writer);
             writer.writeEndDocument();
-        } finally {
-            try {
-                writer.close();
-            } catch (Exception ignore) {
-            }
+            writer.close();
         }
     }
 
@@ -18,21 +18,8 @@ package org.wildfly.build.pack.model;
 
 import org.wildfly.build.ArtifactFileResolver;
 import org.wildfly.build.ArtifactResolver;
-import org.wildfly.build.Locations;
-import org.wildfly.build.util.PropertyResolver;
-
-import javax.xml.stream.XMLStreamException;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
+import org.wildfly.build.CachingArtifactFileResolver;
+import org.wildfly.build.util.ArchiveRegistry;
 
 /**
  * Factory class that creates a feature pack from its artifact coordinates.
@@ -42,78 +29,19 @@ import java.util.zip.ZipEntry;
  */
 public class FeaturePackFactory {
 
-    private static final String CONFIGURATION_ENTRY_NAME_PREFIX = Locations.CONFIGURATION + "/";
-    private static final String MODULES_ENTRY_NAME_PREFIX = Locations.MODULES + "/";
-    private static final String CONTENT_ENTRY_NAME_PREFIX = Locations.CONTENT + "/";
-
     public static FeaturePack createPack(final Artifact artifactCoords, final ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideResolver) {
-        return createPack(artifactCoords, artifactFileResolver, versionOverrideResolver, new HashSet<Artifact>());
+        return createPack(artifactCoords, artifactFileResolver, versionOverrideResolver, new ArchiveRegistry(0));
     }
 
     /**
-     *
+     * Creates a feature pack, and its dependencies. Use a {@link FeaturePackRegistry} to share the dependencies of several feature packs.
      * @param artifactCoords the coordinates of the feature pack artifact
-     * @param artifactFileResolver the artifact -> artifact file resolver
-     * @param processedFeaturePacks a set containing all parent feature packs, useful to detect cyclic dependencies
+     * @param artifactFileResolver the artifact -> artifact file resolver, wrapped by a {@link CachingArtifactFileResolver} unless already caching
+     * @param versionOverrideResolver the artifact version overrides resolver
+     * @param archiveRegistry the registry used to open the feature packs files
      * @return
      */
-    private static FeaturePack createPack(final Artifact artifactCoords, final ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideResolver, Set<Artifact> processedFeaturePacks) {
-        if (!processedFeaturePacks.add(artifactCoords)) {
-            throw new IllegalStateException("Cyclic dependency, feature pack "+artifactCoords+" already processed! Feature packs: "+processedFeaturePacks);
-        }
-        // resolve feature pack artifact
-        // resolve feature pack artifact file
-        File artifactFile = artifactFileResolver.getArtifactFile(artifactCoords);
-        if(artifactFile == null) {
-            throw new RuntimeException("Could not resolve artifact file for feature package  " + artifactCoords);
-        }
-        // process the artifact file
-        try(JarFile jar = new JarFile(artifactFile)) {
-            // create list of files in the artifact file
-            final List<String> configurationFiles = new ArrayList<>();
-            final List<String> modulesFiles = new ArrayList<>();
-            final List<String> contentFiles = new ArrayList<>();
-            final Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                final String entryName = entry.getName();
-                if (entryName.startsWith(CONFIGURATION_ENTRY_NAME_PREFIX)) {
-                    configurationFiles.add(entryName);
-                } else if (entryName.startsWith(MODULES_ENTRY_NAME_PREFIX)) {
-                    modulesFiles.add(entryName);
-                } else if (entryName.startsWith(CONTENT_ENTRY_NAME_PREFIX)) {
-                    contentFiles.add(entryName);
-                }
-            }
-            // create descriptionAr
-            final FeaturePackDescription description = createFeaturePackDescription(jar);
-            // create feature pack artifact resolver
-            final FeaturePackArtifactResolver featurePackArtifactResolver = new FeaturePackArtifactResolver(description.getArtifactVersions());
-            final ArtifactResolver artifactResolver = versionOverrideResolver == null ? featurePackArtifactResolver : new DelegatingArtifactResolver(versionOverrideResolver, featurePackArtifactResolver);
-            // create dependencies feature packs
-            final List<FeaturePack> dependencies = new ArrayList<>();
-            for (String dependency : description.getDependencies()) {
-                Artifact artifact = Artifact.parse(dependency);
-                if(artifact.getPackaging() == null) {
-                    artifact = new Artifact(artifact.getGroupId(), artifact.getArtifactId(), "zip", artifact.getClassifier(), artifact.getVersion());
-                }
-                Artifact dependencyArtifact = artifactResolver.getArtifact(artifact);
-                dependencies.add(createPack(dependencyArtifact, artifactFileResolver, versionOverrideResolver, new HashSet<>(processedFeaturePacks)));
-            }
-            return new FeaturePack(artifactFile, artifactCoords, description, dependencies, artifactResolver, configurationFiles, modulesFiles, contentFiles);
-        } catch (Throwable e) {
-            throw new RuntimeException("Failed to create feature pack from " + artifactCoords, e);
-        }
-    }
-
-    private static FeaturePackDescription createFeaturePackDescription(JarFile jar) throws IOException, XMLStreamException {
-        ZipEntry zipEntry = jar.getEntry(Locations.FEATURE_PACK_DESCRIPTION);
-        if (zipEntry == null) {
-            throw new IllegalArgumentException("feature pack description not found");
-        }
-        FeaturePackDescriptionXMLParser parser = new FeaturePackDescriptionXMLParser(PropertyResolver.NO_OP);
-        try(InputStream inputStream = jar.getInputStream(zipEntry)) {
-            return parser.parse(inputStream);
-        }
+    public static FeaturePack createPack(final Artifact artifactCoords, final ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideResolver, ArchiveRegistry archiveRegistry) {
+        return new FeaturePackRegistry(artifactFileResolver, versionOverrideResolver, archiveRegistry, 1).getFeaturePack(artifactCoords);
     }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.pack.model;
+
+import org.jboss.logging.Logger;
+import org.wildfly.build.ArtifactFileResolver;
+import org.wildfly.build.ArtifactResolver;
+import org.wildfly.build.CachingArtifactFileResolver;
+import org.wildfly.build.Locations;
+import org.wildfly.build.util.ArchiveRegistry;
+import org.wildfly.build.util.ParallelTasks;
+import org.wildfly.build.util.PropertyResolver;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The registry of the feature packs loaded in a session, which shares a single {@link FeaturePack} per feature pack
+ * artifact, no matter through how many dependency paths it is reached.
+ * <p>
+ * Feature packs are loaded in two steps. First the feature pack files are read, level by level of the dependency graph,
+ * with the feature packs of each level read concurrently. Then the feature packs are created from their dependencies,
+ * which detects cyclic dependencies.
+ * <p>
+ * This class is thread safe.
+ */
+public class FeaturePackRegistry {
+
+    private static final Logger logger = Logger.getLogger(FeaturePackRegistry.class);
+
+    private static final String CONFIGURATION_ENTRY_NAME_PREFIX = Locations.CONFIGURATION + "/";
+    private static final String MODULES_ENTRY_NAME_PREFIX = Locations.MODULES + "/";
+    private static final String CONTENT_ENTRY_NAME_PREFIX = Locations.CONTENT + "/";
+
+    private final ArtifactFileResolver artifactFileResolver;
+    private final ArtifactResolver versionOverrideResolver;
+    private final ArchiveRegistry archiveRegistry;
+    private final int parallelism;
+
+    /**
+     * the read feature pack files, guarded by the registry
+     */
+    private final Map<Artifact, FeaturePackFile> featurePackFiles = new HashMap<>();
+
+    /**
+     * the created feature packs, guarded by the registry
+     */
+    private final Map<Artifact, FeaturePack> featurePacks = new HashMap<>();
+
+    /**
+     *
+     * @param artifactFileResolver the artifact -> artifact file resolver, wrapped by a {@link CachingArtifactFileResolver} unless already caching
+     * @param versionOverrideResolver the artifact version overrides resolver
+     * @param archiveRegistry the registry used to open the feature packs files
+     * @param parallelism the max number of feature pack files read concurrently, values lower than 1 meaning the number of available processors
+     */
+    public FeaturePackRegistry(ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideResolver, ArchiveRegistry archiveRegistry, int parallelism) {
+        this.artifactFileResolver = CachingArtifactFileResolver.of(artifactFileResolver);
+        this.versionOverrideResolver = versionOverrideResolver;
+        this.archiveRegistry = archiveRegistry;
+        this.parallelism = ParallelTasks.parallelism(parallelism);
+    }
+
+    /**
+     *
+     * @param artifact the coordinates of the feature pack artifact
+     * @return the feature pack
+     */
+    public FeaturePack getFeaturePack(Artifact artifact) {
+        return getFeaturePacks(Collections.singletonList(artifact)).get(0);
+    }
+
+    /**
+     * Retrieves several feature packs, reading concurrently the files of the feature packs not loaded yet.
+     *
+     * @param artifacts the coordinates of the feature packs artifacts
+     * @return the feature packs, in the same order
+     */
+    public synchronized List<FeaturePack> getFeaturePacks(List<Artifact> artifacts) {
+        readFeaturePackFiles(artifacts);
+        final List<FeaturePack> result = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            result.add(createFeaturePack(artifact, new LinkedHashSet<Artifact>()));
+        }
+        return result;
+    }
+
+    private void readFeaturePackFiles(List<Artifact> artifacts) {
+        Set<Artifact> level = new LinkedHashSet<>();
+        for (Artifact artifact : artifacts) {
+            if (!featurePackFiles.containsKey(artifact)) {
+                level.add(artifact);
+            }
+        }
+        while (!level.isEmpty()) {
+            final Map<Artifact, FeaturePackFile> levelFeaturePackFiles = new ConcurrentHashMap<>();
+            final List<Callable<Void>> tasks = new ArrayList<>(level.size());
+            for (final Artifact artifact : level) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        levelFeaturePackFiles.put(artifact, readFeaturePackFile(artifact));
+                        return null;
+                    }
+                });
+            }
+            logger.debugf("Reading %s feature pack files", tasks.size());
+            try {
+                ParallelTasks.run("feature-pack-loading", parallelism, tasks);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            // the next level are the dependencies not read yet, in the same order
+            final Set<Artifact> nextLevel = new LinkedHashSet<>();
+            for (Artifact artifact : level) {
+                final FeaturePackFile featurePackFile = levelFeaturePackFiles.get(artifact);
+                featurePackFiles.put(artifact, featurePackFile);
+                nextLevel.addAll(featurePackFile.dependencies);
+            }
+            nextLevel.removeAll(featurePackFiles.keySet());
+            level = nextLevel;
+        }
+    }
+
+    private FeaturePack createFeaturePack(Artifact artifact, Set<Artifact> dependents) {
+        if (!dependents.add(artifact)) {
+            throw new IllegalStateException("Cyclic dependency, feature pack "+artifact+" already processed! Feature packs: "+dependents);
+        }
+        FeaturePack featurePack = featurePacks.get(artifact);
+        if (featurePack == null) {
+            final FeaturePackFile featurePackFile = featurePackFiles.get(artifact);
+            final List<FeaturePack> dependencies = new ArrayList<>();
+            for (Artifact dependency : featurePackFile.dependencies) {
+                dependencies.add(createFeaturePack(dependency, dependents));
+            }
+            featurePack = new FeaturePack(featurePackFile.file, artifact, featurePackFile.description, dependencies, featurePackFile.artifactResolver, featurePackFile.configurationFiles, featurePackFile.modulesFiles, featurePackFile.contentFiles, archiveRegistry);
+            featurePacks.put(artifact, featurePack);
+        }
+        dependents.remove(artifact);
+        return featurePack;
+    }
+
+    private FeaturePackFile readFeaturePackFile(Artifact artifactCoords) {
+        // resolve feature pack artifact file
+        File artifactFile = artifactFileResolver.getArtifactFile(artifactCoords);
+        if(artifactFile == null) {
+            throw new RuntimeException("Could not resolve artifact file for feature package  " + artifactCoords);
+        }
+        // process the artifact file
+        try(ArchiveRegistry.Archive archive = archiveRegistry.open(artifactFile)) {
+            final ZipFile jar = archive.getZipFile();
+            // create list of files in the artifact file
+            final List<String> configurationFiles = new ArrayList<>();
+            final List<String> modulesFiles = new ArrayList<>();
+            final List<String> contentFiles = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                final String entryName = entry.getName();
+                if (entryName.startsWith(CONFIGURATION_ENTRY_NAME_PREFIX)) {
+                    configurationFiles.add(entryName);
+                } else if (entryName.startsWith(MODULES_ENTRY_NAME_PREFIX)) {
+                    modulesFiles.add(entryName);
+                } else if (entryName.startsWith(CONTENT_ENTRY_NAME_PREFIX)) {
+                    contentFiles.add(entryName);
+                }
+            }
+            // create description
+            final FeaturePackDescription description = createFeaturePackDescription(jar);
+            // create feature pack artifact resolver
+            final FeaturePackArtifactResolver featurePackArtifactResolver = new FeaturePackArtifactResolver(description.getArtifactVersions());
+            final ArtifactResolver artifactResolver = versionOverrideResolver == null ? featurePackArtifactResolver : new DelegatingArtifactResolver(versionOverrideResolver, featurePackArtifactResolver);
+            // resolve the dependencies feature packs artifacts
+            final List<Artifact> dependencies = new ArrayList<>();
+            for (String dependency : description.getDependencies()) {
+                Artifact artifact = Artifact.parse(dependency);
+                if(artifact.getPackaging() == null) {
+                    artifact = new Artifact(artifact.getGroupId(), artifact.getArtifactId(), "zip", artifact.getClassifier(), artifact.getVersion());
+                }
+                Artifact dependencyArtifact = artifactResolver.getArtifact(artifact);
+                if (dependencyArtifact == null) {
+                    throw new RuntimeException("Could not resolve artifact for feature pack dependency " + dependency);
+                }
+                dependencies.add(dependencyArtifact);
+            }
+            return new FeaturePackFile(artifactFile, description, artifactResolver, configurationFiles, modulesFiles, contentFiles, dependencies);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to create feature pack from " + artifactCoords, e);
+        }
+    }
+
+    private static FeaturePackDescription createFeaturePackDescription(ZipFile jar) throws IOException, XMLStreamException {
+        ZipEntry zipEntry = jar.getEntry(Locations.FEATURE_PACK_DESCRIPTION);
+        if (zipEntry == null) {
+            throw new IllegalArgumentException("feature pack description not found");
+        }
+        FeaturePackDescriptionXMLParser parser = new FeaturePackDescriptionXMLParser(PropertyResolver.NO_OP);
+        try(InputStream inputStream = jar.getInputStream(zipEntry)) {
+            return parser.parse(inputStream);
+        }
+    }
+
+    /**
+     * The content read from a feature pack file.
+     */
+    private static class FeaturePackFile {
+
+        private final File file;
+        private final FeaturePackDescription description;
+        private final ArtifactResolver artifactResolver;
+        private final List<String> configurationFiles;
+        private final List<String> modulesFiles;
+        private final List<String> contentFiles;
+        private final List<Artifact> dependencies;
+
+        private FeaturePackFile(File file, FeaturePackDescription description, ArtifactResolver artifactResolver, List<String> configurationFiles, List<String> modulesFiles, List<String> contentFiles, List<Artifact> dependencies) {
+            this.file = file;
+            this.description = description;
+            this.artifactResolver = artifactResolver;
+            this.configurationFiles = configurationFiles;
+            this.modulesFiles = modulesFiles;
+            this.contentFiles = contentFiles;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.pack.model;
+
+import org.wildfly.build.util.ModuleParseResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dependency graph of the modules of a feature pack and its dependencies, with the transitive dependencies of each
+ * module computed once.
+ * <p>
+ * Modules are numbered, and the graph's strongly connected components are computed with Tarjan's algorithm, which
+ * completes each component after all components it depends on, so the transitive dependencies of each component are
+ * the union of its direct dependencies and of their components transitive dependencies.
+ * <p>
+ * This class is immutable.
+ */
+class ModuleGraph {
+
+    private final FeaturePack featurePack;
+
+    /**
+     * the modules, indexed by id
+     */
+    private final FeaturePack.Module[] modules;
+
+    private final Map<ModuleIdentifier, Integer> ids;
+
+    /**
+     * the component of each module
+     */
+    private final int[] components;
+
+    /**
+     * the transitive dependencies of each component
+     */
+    private final List<BitSet> componentDependencies = new ArrayList<>();
+
+    /**
+     * a missing non optional dependency of each component and its transitive dependencies, if any
+     */
+    private final List<ModuleIdentifier> componentMissingDependencies = new ArrayList<>();
+
+    ModuleGraph(FeaturePack featurePack, Map<ModuleIdentifier, FeaturePack.Module> featurePackAndDependenciesModules) {
+        this.featurePack = featurePack;
+        final int size = featurePackAndDependenciesModules.size();
+        this.modules = new FeaturePack.Module[size];
+        this.ids = new HashMap<>(size * 2);
+        int id = 0;
+        for (Map.Entry<ModuleIdentifier, FeaturePack.Module> entry : featurePackAndDependenciesModules.entrySet()) {
+            modules[id] = entry.getValue();
+            ids.put(entry.getKey(), id);
+            id++;
+        }
+        // resolve the direct dependencies of each module
+        final int[][] edges = new int[size][];
+        final ModuleIdentifier[] missingDependencies = new ModuleIdentifier[size];
+        for (int i = 0; i < size; i++) {
+            final List<ModuleParseResult.ModuleDependency> dependencies = modules[i].getModuleParseResult().getDependencies();
+            final int[] moduleEdges = new int[dependencies.size()];
+            int edgeCount = 0;
+            for (ModuleParseResult.ModuleDependency dependency : dependencies) {
+                final Integer dependencyId = ids.get(dependency.getModuleId());
+                if (dependencyId != null) {
+                    moduleEdges[edgeCount++] = dependencyId;
+                } else if (!dependency.isOptional() && missingDependencies[i] == null) {
+                    missingDependencies[i] = dependency.getModuleId();
+                }
+            }
+            edges[i] = edgeCount == moduleEdges.length ? moduleEdges : Arrays.copyOf(moduleEdges, edgeCount);
+        }
+        this.components = new int[size];
+        computeComponents(edges, missingDependencies);
+    }
+
+    /**
+     * Iterative Tarjan's algorithm, which computes each component's transitive dependencies once it's completed.
+     */
+    private void computeComponents(int[][] edges, ModuleIdentifier[] missingDependencies) {
+        final int size = modules.length;
+        final int[] index = new int[size];
+        final int[] lowLink = new int[size];
+        final boolean[] onStack = new boolean[size];
+        final int[] stack = new int[size];
+        int stackSize = 0;
+        final int[] callStack = new int[size];
+        final int[] edgePositions = new int[size];
+        Arrays.fill(index, -1);
+        int nextIndex = 0;
+        for (int root = 0; root < size; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int callStackSize = 0;
+            callStack[callStackSize++] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (callStackSize > 0) {
+                final int v = callStack[callStackSize - 1];
+                if (edgePositions[v] < edges[v].length) {
+                    final int w = edges[v][edgePositions[v]++];
+                    if (index[w] == -1) {
+                        index[w] = lowLink[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callStack[callStackSize++] = w;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                } else {
+                    callStackSize--;
+                    if (lowLink[v] == index[v]) {
+                        // v is the root of a completed component
+                        final int component = componentDependencies.size();
+                        final List<Integer> members = new ArrayList<>();
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            components[w] = component;
+                            members.add(w);
+                        } while (w != v);
+                        final BitSet dependencies = new BitSet(size);
+                        ModuleIdentifier missingDependency = null;
+                        for (int member : members) {
+                            if (missingDependency == null) {
+                                missingDependency = missingDependencies[member];
+                            }
+                            for (int target : edges[member]) {
+                                dependencies.set(target);
+                                final int targetComponent = components[target];
+                                if (targetComponent != component) {
+                                    // the target's component is already completed
+                                    dependencies.or(componentDependencies.get(targetComponent));
+                                    if (missingDependency == null) {
+                                        missingDependency = componentMissingDependencies.get(targetComponent);
+                                    }
+                                }
+                            }
+                        }
+                        componentDependencies.add(dependencies);
+                        componentMissingDependencies.add(missingDependency);
+                    }
+                    if (callStackSize > 0) {
+                        final int u = callStack[callStackSize - 1];
+                        lowLink[u] = Math.min(lowLink[u], lowLink[v]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the full set of modules which the specified module directly and indirectly depends.
+     *
+     * @param module a module of the graph
+     * @return the module's transitive dependencies
+     * @throws IllegalStateException if a non optional dependency is not found
+     */
+    Map<ModuleIdentifier, FeaturePack.Module> getDependencies(FeaturePack.Module module) {
+        final Integer id = ids.get(module.getIdentifier());
+        if (id == null) {
+            throw new IllegalArgumentException("Module " + module.getIdentifier() + " not found in feature pack " + featurePack + " and dependencies");
+        }
+        final int component = components[id];
+        final ModuleIdentifier missingDependency = componentMissingDependencies.get(component);
+        if (missingDependency != null) {
+            throw new IllegalStateException("Module " + missingDependency + " not found in feature pack " + featurePack + " and dependencies");
+        }
+        final BitSet dependencies = componentDependencies.get(component);
+        final Map<ModuleIdentifier, FeaturePack.Module> result = new HashMap<>(dependencies.cardinality() * 2);
+        for (int i = dependencies.nextSetBit(0); i >= 0; i = dependencies.nextSetBit(i + 1)) {
+            result.put(modules[i].getIdentifier(), modules[i]);
+        }
+        return result;
+    }
+}
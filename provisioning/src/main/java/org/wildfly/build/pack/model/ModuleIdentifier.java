@@ -16,24 +16,34 @@
 
 package org.wildfly.build.pack.model;
 
+import org.wildfly.build.util.Interner;
+
 /**
  * Representation of a module identifier
+ * <p>
+ * Module identifiers are immutable, with the hash code computed once. The identifiers parsed are the canonical
+ * instances, see {@link #intern()}.
  *
  * @author Stuart Douglas
  */
 public class ModuleIdentifier {
 
+    private static final Interner<ModuleIdentifier> INTERNER = new Interner<>();
+
     private final String name;
     private final String slot;
+    private final int hashCode;
 
     public ModuleIdentifier(String name, String slot) {
         this.name = name;
         this.slot = slot;
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + (slot != null ? slot.hashCode() : 0);
+        this.hashCode = result;
     }
 
     public ModuleIdentifier(String name) {
-        this.name = name;
-        this.slot = "main";
+        this(name, "main");
     }
 
     public String getName() {
@@ -47,14 +57,24 @@ public class ModuleIdentifier {
     public static ModuleIdentifier fromString(String moduleId) {
         String[] parts = moduleId.split(":");
         if (parts.length == 1) {
-            return new ModuleIdentifier(parts[0]);
+            return new ModuleIdentifier(parts[0]).intern();
         } else if (parts.length == 2) {
-            return new ModuleIdentifier(parts[0], parts[1]);
+            return new ModuleIdentifier(parts[0], parts[1]).intern();
         } else {
             throw new IllegalArgumentException("Not a valid module identifier " + moduleId);
         }
     }
 
+    /**
+     * Retrieves the canonical instance of this identifier, so equal identifiers, e.g. the dependencies of many modules,
+     * share one instance.
+     *
+     * @return the canonical instance equal to this identifier
+     */
+    public ModuleIdentifier intern() {
+        return INTERNER.intern(this);
+    }
+
     @Override
     public String toString() {
         return "ModuleIdentifier{" +
@@ -70,6 +90,7 @@ public class ModuleIdentifier {
 
         ModuleIdentifier that = (ModuleIdentifier) o;
 
+        if (hashCode != that.hashCode) return false;
         if (name != null ? !name.equals(that.name) : that.name != null) return false;
         if (slot != null ? !slot.equals(that.slot) : that.slot != null) return false;
 
@@ -78,8 +99,6 @@ public class ModuleIdentifier {
 
     @Override
     public int hashCode() {
-        int result = name != null ? name.hashCode() : 0;
-        result = 31 * result + (slot != null ? slot.hashCode() : 0);
-        return result;
+        return hashCode;
     }
 }
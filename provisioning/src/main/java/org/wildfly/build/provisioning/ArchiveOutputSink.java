@@ -0,0 +1,688 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import org.wildfly.build.util.ParallelTasks;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An output sink which writes the server's files straight into an archive, without a staging directory. The archive
+ * entries are under a root dir named as the server's output directory, and their unix modes are taken from the feature
+ * packs file permissions.
+ * <p>
+ * The entries are compressed concurrently, each streamed to a spool file of the compressing thread, so the memory used
+ * does not depend on the size of the files. Once the sink is closed the entries are written to the archive sorted by
+ * name, so the archive does not depend on the order the provisioning tasks added these, and an entry added more than
+ * once is written with its last content. The archive is written to a temporary file, which only replaces the archive
+ * file once the sink is closed.
+ *
+ * @param <E> the type of a prepared, i.e. compressed, archive entry
+ */
+abstract class ArchiveOutputSink<E extends ArchiveOutputSink.PreparedEntry> implements OutputSink {
+
+    static final int DEFAULT_FILE_MODE = 0644;
+
+    static final int DEFAULT_DIR_MODE = 0755;
+
+    /**
+     * the max size of the zip entries read in memory, and compressed concurrently, larger ones are compressed by the
+     * caller, as the zip file may be closed once the entry is extracted
+     */
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+
+    private final File archiveFile;
+    private final File tmpFile;
+    private final String rootDir;
+    private final FilePermissionResolver filePermissionResolver;
+    private final long time;
+    private final OutputStream out;
+    private long position;
+
+    /**
+     * the spool of each thread which prepared entries
+     */
+    private final Map<Thread, Spool> spools = new HashMap<>();
+    /**
+     * the prepared entries, sorted by name, which is the order these are written to the archive
+     */
+    private final Map<String, E> spooledEntries = new TreeMap<>();
+    private final byte[] copyBuffer = new byte[64 * 1024];
+
+    /**
+     * the entries being prepared, in the order these were added, null if entries are prepared by the caller thread
+     */
+    private final Deque<Future<E>> pendingEntries;
+    private final int maxPendingEntries;
+    private final ExecutorService executorService;
+
+    private final Set<String> dirs = new HashSet<>();
+
+    /**
+     *
+     * @param archiveFile the archive file
+     * @param rootDir the name of the archive's root dir
+     * @param filePermissionResolver the resolver of the entries unix modes
+     * @param parallelism the max number of entries compressed concurrently
+     * @throws IOException
+     */
+    ArchiveOutputSink(File archiveFile, String rootDir, FilePermissionResolver filePermissionResolver, int parallelism) throws IOException {
+        this.archiveFile = archiveFile;
+        this.tmpFile = new File(archiveFile.getParentFile(), archiveFile.getName() + ".tmp");
+        this.rootDir = rootDir + "/";
+        this.filePermissionResolver = filePermissionResolver;
+        this.time = System.currentTimeMillis();
+        final File parent = archiveFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        this.out = new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath()), 64 * 1024);
+        if (parallelism > 1) {
+            // bounds the memory used by the entries waiting to be compressed
+            this.maxPendingEntries = parallelism * 4;
+            this.pendingEntries = new ArrayDeque<>(maxPendingEntries);
+            this.executorService = Executors.newFixedThreadPool(parallelism, ParallelTasks.newThreadFactory("archive-output"));
+        } else {
+            this.maxPendingEntries = 0;
+            this.pendingEntries = null;
+            this.executorService = null;
+        }
+    }
+
+    @Override
+    public OutputStream newOutputStream(final String path) throws IOException {
+        return new ByteArrayOutputStream(8192) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    addFile(path, EntrySource.of(buf, count), false);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void copyFile(File artifactFile, String path) throws IOException {
+        addFile(path, EntrySource.of(artifactFile), false);
+    }
+
+    @Override
+    public void extractFile(ZipFile zipFile, ZipEntry entry, String path) throws IOException {
+        if (entry.isDirectory()) {
+            mkdirs(path);
+            return;
+        }
+        if (entry.getSize() > MAX_BUFFERED_ENTRY_SIZE) {
+            addFile(path, EntrySource.of(zipFile, entry), true);
+            return;
+        }
+        final ByteArrayOutputStream data = new ByteArrayOutputStream(entry.getSize() >= 0 ? (int) entry.getSize() : 8192);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                data.write(buffer, 0, read);
+            }
+        }
+        final byte[] bytes = data.toByteArray();
+        addFile(path, EntrySource.of(bytes, bytes.length), false);
+    }
+
+    @Override
+    public synchronized void mkdirs(String path) throws IOException {
+        final String dir = OutputSink.normalize(path);
+        if (dirs.contains(dir)) {
+            return;
+        }
+        final int parentEnd = dir.lastIndexOf('/');
+        if (!dir.isEmpty()) {
+            mkdirs(parentEnd == -1 ? "" : dir.substring(0, parentEnd));
+        }
+        dirs.add(dir);
+        addEntry(rootDir + (dir.isEmpty() ? "" : dir + "/"), true, filePermissionResolver.getMode(dir, DEFAULT_DIR_MODE), EntrySource.of(new byte[0], 0), false);
+    }
+
+    private synchronized void addFile(String path, EntrySource source, boolean prepareNow) throws IOException {
+        final String file = OutputSink.normalize(path);
+        final int parentEnd = file.lastIndexOf('/');
+        mkdirs(parentEnd == -1 ? "" : file.substring(0, parentEnd));
+        addEntry(rootDir + file, false, filePermissionResolver.getMode(file, DEFAULT_FILE_MODE), source, prepareNow);
+    }
+
+    /**
+     * Prepares an entry, concurrently if configured and not requested now, and records it once all previous entries are
+     * recorded.
+     */
+    private void addEntry(final String name, final boolean directory, final int mode, final EntrySource source, boolean prepareNow) throws IOException {
+        if (executorService == null) {
+            putEntry(prepare(name, directory, mode, source));
+            return;
+        }
+        // record the entries already prepared, or wait till there is room for another one
+        while (!pendingEntries.isEmpty() && (pendingEntries.peekFirst().isDone() || pendingEntries.size() >= maxPendingEntries)) {
+            putEntry(getPendingEntry(pendingEntries.removeFirst()));
+        }
+        if (prepareNow) {
+            pendingEntries.addLast(CompletableFuture.completedFuture(prepare(name, directory, mode, source)));
+            return;
+        }
+        pendingEntries.addLast(executorService.submit(new Callable<E>() {
+            @Override
+            public E call() throws Exception {
+                return prepare(name, directory, mode, source);
+            }
+        }));
+    }
+
+    /**
+     * Prepares an entry, with its data written to the spool of the current thread.
+     */
+    private E prepare(String name, boolean directory, int mode, EntrySource source) throws IOException {
+        final Spool spool = getSpool();
+        final long spoolOffset = spool.startEntry();
+        final E entry = prepareEntry(name, directory, mode, source, spool);
+        entry.spool = spool;
+        entry.spoolOffset = spoolOffset;
+        entry.dataLength = spool.getCount();
+        return entry;
+    }
+
+    private Spool getSpool() throws IOException {
+        synchronized (spools) {
+            Spool spool = spools.get(Thread.currentThread());
+            if (spool == null) {
+                spool = new Spool(new File(archiveFile.getParentFile(), archiveFile.getName() + ".spool" + spools.size()));
+                spools.put(Thread.currentThread(), spool);
+            }
+            return spool;
+        }
+    }
+
+    /**
+     * Records a prepared entry, so only its metadata is kept in memory till it is written.
+     */
+    private void putEntry(E entry) {
+        // the last entry added with a name replaces any previous one
+        spooledEntries.put(entry.name, entry);
+    }
+
+    private E getPendingEntry(Future<E> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + archiveFile);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to write " + archiveFile, cause);
+        }
+    }
+
+    /**
+     * Prepares an entry, e.g. compresses its data. This method may be invoked concurrently, each thread with its own
+     * spool.
+     *
+     * @param name the entry's name, which ends with '/' if a directory
+     * @param directory true if the entry is a directory
+     * @param mode the entry's unix mode, without the file type bits
+     * @param source the entry's data
+     * @param spool where the entry's prepared data is written
+     * @return the prepared entry
+     * @throws IOException
+     */
+    protected abstract E prepareEntry(String name, boolean directory, int mode, EntrySource source, Spool spool) throws IOException;
+
+    /**
+     * Writes a prepared entry to the archive, with {@link #write(byte[], int, int)} and {@link #writeData(PreparedEntry)}.
+     * Entries are written one at a time, sorted by name.
+     *
+     * @param entry the prepared entry
+     * @throws IOException
+     */
+    protected abstract void writeEntry(E entry) throws IOException;
+
+    /**
+     * Writes the end of the archive, once all entries were written.
+     *
+     * @throws IOException
+     */
+    protected abstract void finish() throws IOException;
+
+    /**
+     *
+     * @return the entries modification time
+     */
+    protected long getTime() {
+        return time;
+    }
+
+    /**
+     *
+     * @return the number of bytes written to the archive
+     */
+    protected long getPosition() {
+        return position;
+    }
+
+    protected void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        position += length;
+    }
+
+    /**
+     * Writes the data of a prepared entry to the archive, from its spool file.
+     *
+     * @param entry the prepared entry
+     * @throws IOException
+     */
+    protected void writeData(PreparedEntry entry) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+        long offset = entry.spoolOffset;
+        long remaining = entry.dataLength;
+        while (remaining > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(remaining, copyBuffer.length));
+            final int read = entry.spool.channel.read(buffer, offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + entry.spool.file);
+            }
+            write(copyBuffer, 0, read);
+            offset += read;
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Copies the data of an entry.
+     *
+     * @param source the entry's data
+     * @param out where the data is copied
+     * @throws IOException if the data could not be read, or its size is not the expected one, e.g. a file changed while
+     * archived
+     */
+    protected static void copy(EntrySource source, OutputStream out) throws IOException {
+        long copied = 0;
+        try (InputStream in = source.open()) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+        }
+        if (copied != source.getSize()) {
+            throw new IOException("The size of " + source + " changed while archived");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (executorService != null) {
+                while (!pendingEntries.isEmpty()) {
+                    putEntry(getPendingEntry(pendingEntries.removeFirst()));
+                }
+            }
+            for (Spool spool : spools.values()) {
+                spool.flush();
+            }
+            for (E entry : spooledEntries.values()) {
+                writeEntry(entry);
+            }
+            finish();
+            out.close();
+            Files.move(tmpFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            discard();
+            throw e;
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public synchronized void discard() {
+        shutdown();
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        tmpFile.delete();
+    }
+
+    /**
+     * Stops the compression pool, then closes and deletes the spools, once no thread uses these.
+     */
+    private void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            ParallelTasks.awaitTermination(executorService);
+        }
+        synchronized (spools) {
+            for (Spool spool : spools.values()) {
+                spool.close();
+            }
+            spools.clear();
+        }
+    }
+
+    /**
+     * The data of an entry, which may be read more than once.
+     */
+    abstract static class EntrySource {
+
+        /**
+         *
+         * @return the size of the data
+         */
+        abstract long getSize();
+
+        /**
+         *
+         * @return a stream reading the data
+         * @throws IOException
+         */
+        abstract InputStream open() throws IOException;
+
+        static EntrySource of(final byte[] data, final int length) {
+            return new EntrySource() {
+                @Override
+                long getSize() {
+                    return length;
+                }
+
+                @Override
+                InputStream open() {
+                    return new ByteArrayInputStream(data, 0, length);
+                }
+
+                @Override
+                public String toString() {
+                    return "data";
+                }
+            };
+        }
+
+        static EntrySource of(final File file) {
+            final long size = file.length();
+            return new EntrySource() {
+                @Override
+                long getSize() {
+                    return size;
+                }
+
+                @Override
+                InputStream open() throws IOException {
+                    return Files.newInputStream(file.toPath());
+                }
+
+                @Override
+                public String toString() {
+                    return file.toString();
+                }
+            };
+        }
+
+        static EntrySource of(final ZipFile zipFile, final ZipEntry entry) {
+            return new EntrySource() {
+                @Override
+                long getSize() {
+                    return entry.getSize();
+                }
+
+                @Override
+                InputStream open() throws IOException {
+                    return zipFile.getInputStream(entry);
+                }
+
+                @Override
+                public String toString() {
+                    return zipFile.getName() + "!/" + entry.getName();
+                }
+            };
+        }
+    }
+
+    /**
+     * The spool file of a thread preparing entries, to which the prepared data of the entries is written, buffered, and
+     * the deflater the thread compresses the entries with.
+     */
+    static final class Spool extends OutputStream {
+
+        private final File file;
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        /**
+         * the position in the file of the buffer's content
+         */
+        private long position;
+        private long entryOffset;
+
+        private Spool(File file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         *
+         * @return the offset of the data of the entry being prepared
+         */
+        private long startEntry() throws IOException {
+            flush();
+            entryOffset = position;
+            return entryOffset;
+        }
+
+        /**
+         *
+         * @return the length of the data written for the entry being prepared
+         */
+        long getCount() {
+            return position + buffer.position() - entryOffset;
+        }
+
+        /**
+         * Discards the data written for the entry being prepared, e.g. to write it another way.
+         */
+        void reset() {
+            buffer.clear();
+            position = entryOffset;
+        }
+
+        /**
+         *
+         * @return the deflater of the thread, reset once used
+         */
+        Deflater getDeflater() {
+            return deflater;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                final int written = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, written);
+                offset += written;
+                length -= written;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            deflater.end();
+            file.delete();
+        }
+    }
+
+    /**
+     * Compresses what is written with the deflate algorithm, without any zlib or gzip wrapping, and computes the CRC and
+     * length of the uncompressed data. Once finished the stream must be closed, which does not close the stream it writes
+     * to, but resets the deflater.
+     */
+    static final class DeflatingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8192];
+        private long length;
+
+        DeflatingOutputStream(OutputStream out, Deflater deflater) {
+            this.out = out;
+            this.deflater = deflater;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            crc.update(bytes, offset, length);
+            this.length += length;
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        /**
+         * Writes the remaining compressed data.
+         *
+         * @throws IOException
+         */
+        void finish() throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+        }
+
+        private void deflate() throws IOException {
+            final int deflated = deflater.deflate(buffer);
+            out.write(buffer, 0, deflated);
+        }
+
+        /**
+         *
+         * @return the CRC-32 of the uncompressed data
+         */
+        long getCrc() {
+            return crc.getValue();
+        }
+
+        /**
+         *
+         * @return the length of the uncompressed data
+         */
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        public void close() {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * A prepared archive entry, whose data is what is written to the archive for the entry, besides any header written
+     * by {@link #writeEntry(PreparedEntry)}.
+     */
+    static class PreparedEntry {
+
+        final String name;
+        /**
+         * the spool the entry's data was written to
+         */
+        Spool spool;
+        /**
+         * the offset of the entry's data in the spool file
+         */
+        long spoolOffset;
+        long dataLength;
+
+        PreparedEntry(String name) {
+            this.name = name;
+        }
+    }
+}
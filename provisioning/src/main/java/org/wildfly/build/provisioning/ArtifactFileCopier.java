@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import org.jboss.logging.Logger;
+import org.wildfly.build.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies artifact files to the provisioned server, linking them instead if so configured, and keeps track of the bytes
+ * linked and copied.
+ * <p>
+ * A linked file shares its content, and with hard links its attributes too, with the artifact file, so provisioning
+ * replaces rather than writes through existing files, and copies rather than hard links a file given another
+ * permission.
+ * <p>
+ * This class is thread safe.
+ */
+class ArtifactFileCopier {
+
+    private static final Logger logger = Logger.getLogger(ArtifactFileCopier.class);
+
+    /**
+     * the min size of the files reflinked, smaller files are copied faster than a reflink process is started
+     */
+    private static final long REFLINK_MIN_SIZE = 1024 * 1024;
+
+    private final LinkStrategy linkStrategy;
+
+    /**
+     * false once the reflink process could not be started, the platform is then assumed to not support it
+     */
+    private volatile boolean reflinkSupported = true;
+
+    private final AtomicLong filesLinked = new AtomicLong();
+    private final AtomicLong bytesLinked = new AtomicLong();
+    private final AtomicLong filesCopied = new AtomicLong();
+    private final AtomicLong bytesCopied = new AtomicLong();
+
+    ArtifactFileCopier(LinkStrategy linkStrategy) {
+        this.linkStrategy = linkStrategy;
+    }
+
+    /**
+     * Copies or links an artifact file, replacing the target file if it exists.
+     *
+     * @param artifactFile the artifact file
+     * @param target the target file
+     * @param permission the permission the target file is given once copied, null if none
+     * @throws IOException
+     */
+    void copy(File artifactFile, File target, Set<PosixFilePermission> permission) throws IOException {
+        final long size = artifactFile.length();
+        if (mayLink(artifactFile, permission) && link(artifactFile, target)) {
+            filesLinked.incrementAndGet();
+            bytesLinked.addAndGet(size);
+        } else {
+            // a target hard linked to the artifact file is the same file, which a copy would leave linked
+            Files.deleteIfExists(target.toPath());
+            FileUtils.copyFile(artifactFile, target);
+            filesCopied.incrementAndGet();
+            bytesCopied.addAndGet(size);
+        }
+    }
+
+    /**
+     * A hard link shares the artifact file's permission, which must not be changed, so a file with another permission is
+     * copied instead.
+     */
+    private boolean mayLink(File artifactFile, Set<PosixFilePermission> permission) throws IOException {
+        return linkStrategy != LinkStrategy.HARD_LINK || permission == null || permission.equals(Files.getPosixFilePermissions(artifactFile.toPath()));
+    }
+
+    /**
+     * Sets the permission of a provisioned file. A file hard linked to another one, e.g. an artifact file of the local
+     * repository, is replaced by a copy first, so the other file keeps its permission.
+     *
+     * @param file the provisioned file
+     * @param permission the permission
+     * @throws IOException
+     */
+    static void setPermission(Path file, Set<PosixFilePermission> permission) throws IOException {
+        if (permission.equals(Files.getPosixFilePermissions(file))) {
+            return;
+        }
+        if (Files.isRegularFile(file) && ((Number) Files.getAttribute(file, "unix:nlink")).intValue() > 1) {
+            logger.debugf("Replacing hard link %s by a copy, to set its permission", file);
+            final Path copy = file.resolveSibling(file.getFileName() + ".copy");
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.setPosixFilePermissions(file, permission);
+    }
+
+    private boolean link(File artifactFile, File target) throws IOException {
+        switch (linkStrategy) {
+            case HARD_LINK:
+                Files.deleteIfExists(target.toPath());
+                try {
+                    Files.createLink(target.toPath(), artifactFile.toPath());
+                    return true;
+                } catch (IOException | UnsupportedOperationException e) {
+                    logger.debugf("Failed to hard link %s to %s, copying it: %s", artifactFile, target, e);
+                    return false;
+                }
+            case REFLINK:
+                return reflinkSupported && artifactFile.length() >= REFLINK_MIN_SIZE && reflink(artifactFile, target);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reflinks a file with {@code cp}, which fails if the file system does not support reflinks, e.g. for a file on
+     * another file system than the target, and such a file is then copied.
+     */
+    private boolean reflink(File artifactFile, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        final Process process;
+        try {
+            process = new ProcessBuilder("cp", "--reflink=always", "--", artifactFile.getAbsolutePath(), target.getAbsolutePath())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.PIPE)
+                    .start();
+        } catch (IOException e) {
+            logger.debugf("Reflinks not available, copying artifact files: %s", e);
+            reflinkSupported = false;
+            return false;
+        }
+        try {
+            final String output = FileUtils.readFile(process.getInputStream());
+            if (process.waitFor() == 0) {
+                return true;
+            }
+            logger.debugf("Failed to reflink %s to %s, copying it: %s", artifactFile, target, output.trim());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while linking " + target);
+        }
+        Files.deleteIfExists(target.toPath());
+        return false;
+    }
+
+    /**
+     * Logs how many files and bytes were linked and copied, at info level if linking was configured.
+     */
+    void logStatistics() {
+        final Logger.Level level = linkStrategy == LinkStrategy.COPY ? Logger.Level.DEBUG : Logger.Level.INFO;
+        logger.logf(level, "Artifact files with link strategy %s: %d files (%d bytes) linked, %d files (%d bytes) copied", linkStrategy, filesLinked.get(), bytesLinked.get(), filesCopied.get(), bytesCopied.get());
+    }
+}
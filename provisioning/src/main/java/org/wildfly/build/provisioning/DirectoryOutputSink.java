@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import org.wildfly.build.common.model.FilePermission;
+import org.wildfly.build.util.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An output sink which writes the server's files in a directory. Existing files are replaced, and not written through,
+ * since these may be links to artifact files.
+ * <p>
+ * The feature packs file permissions are applied once, to each file when written, and to each dir once the output is
+ * completed, deepest first, so a dir permission without write access does not prevent writing the dir's files.
+ */
+class DirectoryOutputSink implements OutputSink {
+
+    private final File outputDirectory;
+
+    private final ArtifactFileCopier artifactFileCopier;
+
+    private final FilePermissionResolver filePermissionResolver;
+
+    /**
+     * the dirs created, or found, by this sink, which permissions are set on close
+     */
+    private final Set<String> dirs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     *
+     * @param outputDirectory the server's output directory, which must exist
+     * @param artifactFileCopier the copier of artifact files
+     * @param filePermissionResolver the resolver of the files permissions, null if permissions are not applied by this sink
+     */
+    DirectoryOutputSink(File outputDirectory, ArtifactFileCopier artifactFileCopier, FilePermissionResolver filePermissionResolver) {
+        this.outputDirectory = outputDirectory;
+        this.artifactFileCopier = artifactFileCopier;
+        this.filePermissionResolver = filePermissionResolver;
+        dirs.add("");
+    }
+
+    @Override
+    public OutputStream newOutputStream(String path) throws IOException {
+        final String normalizedPath = OutputSink.normalize(path);
+        final File file = getFile(normalizedPath);
+        createParentDirectory(normalizedPath);
+        Files.deleteIfExists(file.toPath());
+        return new BufferedOutputStream(Files.newOutputStream(file.toPath())) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    super.close();
+                    setPermission(normalizedPath, file);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void copyFile(File artifactFile, String path) throws IOException {
+        final String normalizedPath = OutputSink.normalize(path);
+        final File file = getFile(normalizedPath);
+        createParentDirectory(normalizedPath);
+        final FilePermission filePermission = getFilePermission(normalizedPath);
+        artifactFileCopier.copy(artifactFile, file, filePermission != null ? filePermission.getPermission() : null);
+        setPermission(normalizedPath, file);
+    }
+
+    @Override
+    public void extractFile(ZipFile zipFile, ZipEntry entry, String path) throws IOException {
+        final String normalizedPath = OutputSink.normalize(path);
+        if (entry.isDirectory()) {
+            createDirectory(normalizedPath);
+            return;
+        }
+        final File file = getFile(normalizedPath);
+        createParentDirectory(normalizedPath);
+        FileUtils.extractFile(zipFile, entry, file);
+        setPermission(normalizedPath, file);
+    }
+
+    @Override
+    public void mkdirs(String path) throws IOException {
+        createDirectory(OutputSink.normalize(path));
+    }
+
+    private File getFile(String path) {
+        return new File(outputDirectory, path);
+    }
+
+    private void createParentDirectory(String path) throws IOException {
+        final int parentEnd = path.lastIndexOf('/');
+        createDirectory(parentEnd == -1 ? "" : path.substring(0, parentEnd));
+    }
+
+    /**
+     * Creates a dir, and its parents.
+     */
+    private void createDirectory(String path) throws IOException {
+        if (dirs.contains(path)) {
+            return;
+        }
+        synchronized (this) {
+            if (dirs.contains(path)) {
+                return;
+            }
+            createParentDirectory(path);
+            final File dir = getFile(path);
+            if (!dir.mkdir() && !dir.isDirectory()) {
+                throw new IOException("Could not create directory " + dir);
+            }
+            dirs.add(path);
+        }
+    }
+
+    private FilePermission getFilePermission(String path) {
+        return filePermissionResolver != null ? filePermissionResolver.getFilePermission(path) : null;
+    }
+
+    private void setPermission(String path, File file) throws IOException {
+        final FilePermission filePermission = getFilePermission(path);
+        if (filePermission != null) {
+            ArtifactFileCopier.setPermission(file.toPath(), filePermission.getPermission());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (filePermissionResolver == null) {
+            return;
+        }
+        final List<String> sortedDirs = new ArrayList<>(dirs);
+        // the deepest dirs first
+        Collections.sort(sortedDirs, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Integer.compare(depth(o2), depth(o1));
+            }
+        });
+        for (String dir : sortedDirs) {
+            setPermission(dir, getFile(dir));
+        }
+    }
+
+    private static int depth(String path) {
+        if (path.isEmpty()) {
+            return 0;
+        }
+        int depth = 1;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public void discard() {
+    }
+}
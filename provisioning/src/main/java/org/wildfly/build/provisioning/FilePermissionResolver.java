@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import org.wildfly.build.common.model.FileFilter;
+import org.wildfly.build.common.model.FilePermission;
+import org.wildfly.build.util.WildcardMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the permission of a provisioned file from the feature packs file permissions, the last matching permission
+ * winning, as if these were applied one after the other.
+ * <p>
+ * The filters of all file permissions are compiled in a single matcher, the last permission's first, so a file is
+ * usually resolved by a single match.
+ */
+class FilePermissionResolver {
+
+    private final WildcardMatcher matcher;
+
+    /**
+     * the filter of each matcher pattern
+     */
+    private final FileFilter[] filters;
+
+    /**
+     * the file permission of each matcher pattern
+     */
+    private final FilePermission[] filePermissions;
+
+    /**
+     * for each matcher pattern, the index of the first pattern of the next file permission in the matcher
+     */
+    private final int[] nextFilePermissionIndexes;
+
+    /**
+     *
+     * @param filePermissions the file permissions, in the order these apply
+     */
+    FilePermissionResolver(List<FilePermission> filePermissions) {
+        final List<String> patterns = new ArrayList<>();
+        final List<FileFilter> filters = new ArrayList<>();
+        final List<FilePermission> patternFilePermissions = new ArrayList<>();
+        final List<Integer> nextFilePermissionIndexes = new ArrayList<>();
+        for (int i = filePermissions.size() - 1; i >= 0; i--) {
+            final FilePermission filePermission = filePermissions.get(i);
+            final int nextFilePermissionIndex = patterns.size() + filePermission.getFilters().size();
+            for (FileFilter filter : filePermission.getFilters()) {
+                patterns.add(filter.getPattern());
+                filters.add(filter);
+                patternFilePermissions.add(filePermission);
+                nextFilePermissionIndexes.add(nextFilePermissionIndex);
+            }
+        }
+        this.matcher = new WildcardMatcher(patterns);
+        this.filters = filters.toArray(new FileFilter[filters.size()]);
+        this.filePermissions = patternFilePermissions.toArray(new FilePermission[patternFilePermissions.size()]);
+        this.nextFilePermissionIndexes = new int[nextFilePermissionIndexes.size()];
+        for (int i = 0; i < this.nextFilePermissionIndexes.length; i++) {
+            this.nextFilePermissionIndexes[i] = nextFilePermissionIndexes.get(i);
+        }
+    }
+
+    /**
+     *
+     * @param path the file's path, relative to the server's root, with '/' as separator
+     * @return the file's permission, null if no file permission includes the file
+     */
+    FilePermission getFilePermission(String path) {
+        int fromIndex = 0;
+        while (true) {
+            final int index = matcher.indexOf(path, fromIndex);
+            if (index == -1) {
+                return null;
+            }
+            if (filters[index].isInclude()) {
+                return filePermissions[index];
+            }
+            // the permission's first matching filter excludes the file, try the permissions applied before
+            fromIndex = nextFilePermissionIndexes[index];
+        }
+    }
+
+    /**
+     *
+     * @param path the file's path, relative to the server's root, with '/' as separator
+     * @param defaultMode the mode if no file permission includes the file
+     * @return the file's unix mode, without the file type bits
+     */
+    int getMode(String path, int defaultMode) {
+        final FilePermission filePermission = getFilePermission(path);
+        return filePermission != null ? Integer.parseInt(filePermission.getValue(), 8) : defaultMode;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import org.jboss.jandex.Indexer;
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A persistent cache of the jandex index jars, keyed by the SHA-1 checksum of the indexed jar, so an unchanged jar is
+ * indexed once, and not on every provisioning. The cache may be shared by concurrent provisionings, each index jar is
+ * written to a temporary file, which is then atomically moved into the cache.
+ */
+public class JandexIndexCache {
+
+    private static final Logger log = Logger.getLogger(JandexIndexCache.class);
+
+    /**
+     * the system property which overrides the location of the default cache directory
+     */
+    public static final String DIRECTORY_PROPERTY = "wildfly.build.jandex-index-cache";
+
+    private final File directory;
+
+    /**
+     *
+     * @param directory the cache directory, index jars are kept in a sub directory per jandex version
+     */
+    JandexIndexCache(File directory) {
+        final String jandexVersion = Indexer.class.getPackage().getImplementationVersion();
+        this.directory = new File(directory, jandexVersion != null ? jandexVersion : "unknown");
+    }
+
+    /**
+     *
+     * @return the default cache directory, in the user's home dir unless overridden by the {@link #DIRECTORY_PROPERTY} system property
+     */
+    static File getDefaultDirectory() {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory != null) {
+            return new File(directory);
+        }
+        return new File(new File(System.getProperty("user.home"), ".wildfly-build"), "jandex-index-cache");
+    }
+
+    /**
+     * Writes the index jar of a jar, from the cache if there, otherwise creating and caching it.
+     *
+     * @param jarFile the jar to index
+     * @param target where the index jar is written, closed once written
+     * @throws IOException
+     */
+    void writeIndex(File jarFile, OutputStream target) throws IOException {
+        final File indexFile = new File(directory, checksum(jarFile) + ".jar");
+        if (indexFile.isFile()) {
+            log.debugf("Using cached jandex index %s of %s", indexFile, jarFile);
+        } else {
+            try {
+                createIndex(jarFile, indexFile);
+            } catch (IOException e) {
+                log.warnf(e, "Could not cache jandex index of %s in %s", jarFile, directory);
+                JandexIndexer.createIndex(jarFile, target);
+                return;
+            }
+        }
+        try (OutputStream out = target) {
+            Files.copy(indexFile.toPath(), out);
+        }
+    }
+
+    private void createIndex(File jarFile, File indexFile) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        final File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", directory);
+        try {
+            JandexIndexer.createIndex(jarFile, Files.newOutputStream(tmpFile.toPath()));
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    private static String checksum(File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            final byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
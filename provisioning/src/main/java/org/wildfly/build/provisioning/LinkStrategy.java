@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import java.util.Locale;
+
+/**
+ * How artifact files are copied from the local repository to the provisioned server.
+ */
+public enum LinkStrategy {
+
+    /**
+     * the artifact files are copied
+     */
+    COPY,
+
+    /**
+     * the artifact files are hard linked, and copied if a link is not possible, e.g. across file systems
+     */
+    HARD_LINK,
+
+    /**
+     * the artifact files are copy-on-write cloned, where the file system supports it, and copied otherwise, as are the
+     * small files, which are copied faster than cloned
+     */
+    REFLINK;
+
+    /**
+     *
+     * @param name the strategy name, case insensitive, with words separated by '_' or '-'
+     * @return the strategy
+     * @throws IllegalArgumentException if there is no strategy with such name
+     */
+    public static LinkStrategy of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+    }
+}
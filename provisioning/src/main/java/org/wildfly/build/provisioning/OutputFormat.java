@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * The form of the provisioned server.
+ */
+public enum OutputFormat {
+
+    /**
+     * the server is written in the output directory
+     */
+    DIRECTORY(null),
+
+    /**
+     * the server is written in a zip file, named as the output directory plus {@code .zip}
+     */
+    ZIP(".zip"),
+
+    /**
+     * the server is written in a gzip compressed tar file, named as the output directory plus {@code .tar.gz}
+     */
+    TAR_GZ(".tar.gz");
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     *
+     * @param outputDirectory the server's output directory
+     * @return the file where the server is written, the output directory itself if the format is not an archive
+     */
+    public File getOutputFile(File outputDirectory) {
+        final File absoluteOutputDirectory = outputDirectory.getAbsoluteFile();
+        return extension == null ? absoluteOutputDirectory : new File(absoluteOutputDirectory.getParentFile(), absoluteOutputDirectory.getName() + extension);
+    }
+
+    /**
+     *
+     * @param name the format name, or archive file extension, case insensitive, e.g. {@code directory}, {@code zip} or {@code tar.gz}
+     * @return the format
+     * @throws IllegalArgumentException if there is no format with such name
+     */
+    public static OutputFormat of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ENGLISH).replace('-', '_').replace('.', '_'));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Where the files of a provisioned server are written. Paths are relative to the server's root, with '/' as separator,
+ * and a file written more than once keeps its last content.
+ * <p>
+ * Implementations are thread safe, the modules may be provisioned concurrently.
+ */
+interface OutputSink extends Closeable {
+
+    /**
+     * Opens a new file.
+     *
+     * @param path the file path
+     * @return the file output stream, the file is written once it is closed
+     * @throws IOException
+     */
+    OutputStream newOutputStream(String path) throws IOException;
+
+    /**
+     * Copies an artifact file.
+     *
+     * @param artifactFile the artifact file
+     * @param path the target file path
+     * @throws IOException
+     */
+    void copyFile(File artifactFile, String path) throws IOException;
+
+    /**
+     * Extracts a zip entry.
+     *
+     * @param zipFile the zip file
+     * @param entry the zip entry
+     * @param path the target file path, or dir path if the entry is a dir
+     * @throws IOException
+     */
+    void extractFile(ZipFile zipFile, ZipEntry entry, String path) throws IOException;
+
+    /**
+     * Creates a dir, and its parents.
+     *
+     * @param path the dir path
+     * @throws IOException
+     */
+    void mkdirs(String path) throws IOException;
+
+    /**
+     * Completes the output, once every file was written.
+     *
+     * @throws IOException
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Releases the sink resources after a failed provisioning, without completing the output.
+     */
+    void discard();
+
+    /**
+     *
+     * @param path a path
+     * @return the path with '/' as separator, and without leading or trailing separators
+     */
+    static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import org.jboss.logging.Logger;
+import org.wildfly.build.util.FileInputStreamSource;
+import org.wildfly.build.util.InputStreamSource;
+import org.wildfly.build.util.ZipEntryInputStreamSource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * The manifest of a provisioned server, which maps each file written in the output directory to the fingerprint of its
+ * source. The manifest of the previous provisioning allows an incremental provisioning to skip the files whose source
+ * did not change, and to delete the files which are no longer provisioned.
+ * <p>
+ * The manifest is only stored by incremental provisionings, next to the output directory, so it is not part of the
+ * provisioned server.
+ */
+class ProvisioningManifest {
+
+    private static final Logger logger = Logger.getLogger(ProvisioningManifest.class);
+
+    static final String FILE_SUFFIX = ".provisioning-manifest";
+
+    /**
+     * the fingerprint recorded for the files always written, which matches no source
+     */
+    private static final String ALWAYS_WRITTEN = "";
+
+    private final File outputDirectory;
+
+    private final File manifestFile;
+
+    private final boolean incremental;
+
+    /**
+     * the entries of the previous provisioning, null if there is none
+     */
+    private final Map<String, String> previousEntries;
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    private ProvisioningManifest(File outputDirectory, File manifestFile, boolean incremental, Map<String, String> previousEntries) {
+        this.outputDirectory = outputDirectory;
+        this.manifestFile = manifestFile;
+        this.incremental = incremental;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Loads the manifest of the previous incremental provisioning of the specified output directory, if any.
+     * <p>
+     * The stored manifest is removed, and only written again by {@link #store()}, once the provisioning succeeds.
+     *
+     * @param outputDirectory the server's output directory
+     * @return the manifest
+     * @throws IOException
+     */
+    static ProvisioningManifest load(File outputDirectory) throws IOException {
+        final File absoluteOutputDirectory = outputDirectory.getAbsoluteFile();
+        final File manifestFile = getManifestFile(absoluteOutputDirectory);
+        Map<String, String> previousEntries = null;
+        if (manifestFile.isFile()) {
+            if (absoluteOutputDirectory.isDirectory()) {
+                final Properties properties = new Properties();
+                try (InputStream in = new FileInputStream(manifestFile)) {
+                    properties.load(in);
+                }
+                previousEntries = new TreeMap<>();
+                for (String path : properties.stringPropertyNames()) {
+                    previousEntries.put(path, properties.getProperty(path));
+                }
+            }
+            if (!manifestFile.delete()) {
+                throw new IOException("Could not delete " + manifestFile);
+            }
+        }
+        return new ProvisioningManifest(absoluteOutputDirectory, manifestFile, true, previousEntries);
+    }
+
+    /**
+     * Creates the manifest of a provisioning which is always fully written, and leaves no manifest, e.g. not incremental,
+     * or to an archive.
+     *
+     * @param outputDirectory the server's output directory
+     * @return the manifest
+     */
+    static ProvisioningManifest notStored(File outputDirectory) {
+        return new ProvisioningManifest(outputDirectory.getAbsoluteFile(), null, false, null);
+    }
+
+    /**
+     * Removes the manifest left by a previous incremental provisioning of the specified output directory, if any, which
+     * no longer describes the directory once fully rewritten.
+     *
+     * @param outputDirectory the server's output directory
+     * @throws IOException
+     */
+    static void deleteStored(File outputDirectory) throws IOException {
+        final File manifestFile = getManifestFile(outputDirectory.getAbsoluteFile());
+        if (manifestFile.isFile() && !manifestFile.delete()) {
+            throw new IOException("Could not delete " + manifestFile);
+        }
+    }
+
+    private static File getManifestFile(File absoluteOutputDirectory) {
+        return new File(absoluteOutputDirectory.getParentFile(), absoluteOutputDirectory.getName() + FILE_SUFFIX);
+    }
+
+    /**
+     *
+     * @return true if the output directory content is the one described by the previous provisioning manifest, and may be reused
+     */
+    boolean isIncremental() {
+        return incremental && previousEntries != null;
+    }
+
+    /**
+     * Records a file to be provisioned, and checks if it may be skipped.
+     * <p>
+     * A file written by more than one source, e.g. a schema found in several artifacts, is always written, since its
+     * content is the one of the last source, which a single fingerprint does not identify.
+     *
+     * @param path        the file's path, relative to the output directory
+     * @param fingerprint the fingerprint of the file's source, null if the file must always be written
+     * @return true if the file exists and its source did not change since the previous provisioning, false if the file needs to be written
+     */
+    boolean isUpToDate(String path, String fingerprint) {
+        if (manifestFile == null) {
+            return false;
+        }
+        final String normalizedPath = path.replace(File.separatorChar, '/');
+        if (fingerprint == null || entries.putIfAbsent(normalizedPath, fingerprint) != null) {
+            entries.put(normalizedPath, ALWAYS_WRITTEN);
+            return false;
+        }
+        if (!isIncremental()) {
+            return false;
+        }
+        if (fingerprint.equals(previousEntries.get(normalizedPath)) && new File(outputDirectory, normalizedPath).exists()) {
+            logger.debugf("Skipping unchanged file %s", normalizedPath);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the files provisioned by the previous provisioning, which were not provisioned this time.
+     */
+    void deleteStaleFiles() {
+        if (!isIncremental()) {
+            return;
+        }
+        for (String path : previousEntries.keySet()) {
+            if (!entries.containsKey(path)) {
+                File file = new File(outputDirectory, path);
+                logger.debugf("Deleting stale file %s", path);
+                file.delete();
+                // delete the parent dirs left empty
+                File parent = file.getParentFile();
+                while (parent != null && !parent.equals(outputDirectory) && parent.delete()) {
+                    parent = parent.getParentFile();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the manifest, unless created by {@link #notStored(File)}.
+     *
+     * @throws IOException
+     */
+    void store() throws IOException {
+        if (manifestFile == null) {
+            return;
+        }
+        final Properties properties = new Properties();
+        properties.putAll(entries);
+        try (OutputStream out = new FileOutputStream(manifestFile)) {
+            properties.store(out, "Server provisioning manifest of " + outputDirectory.getName());
+        }
+    }
+
+    /**
+     *
+     * @param entry a zip entry
+     * @return the fingerprint of the zip entry content, taken from the zip's central directory
+     */
+    static String fingerprint(ZipEntry entry) {
+        return "crc=" + Long.toHexString(entry.getCrc()) + ",size=" + entry.getSize();
+    }
+
+    /**
+     *
+     * @param file a file
+     * @return the fingerprint of the file
+     */
+    static String fingerprint(File file) {
+        return "file=" + file.getAbsolutePath() + ",size=" + file.length() + ",lastModified=" + file.lastModified();
+    }
+
+    /**
+     *
+     * @param artifactFile an artifact file
+     * @param linkStrategy the link strategy of the artifact file's copy
+     * @return the fingerprint of the artifact file's copy, which changes with the link strategy, so the files linked by a previous provisioning are replaced once linking is no longer requested
+     */
+    static String fingerprint(File artifactFile, LinkStrategy linkStrategy) {
+        return "link=" + linkStrategy + "," + fingerprint(artifactFile);
+    }
+
+    /**
+     *
+     * @param inputStreamSource an input stream source
+     * @return the fingerprint of the source's content, null if the source is of an unknown type, null, or not found
+     * @throws IOException
+     */
+    static String fingerprint(InputStreamSource inputStreamSource) throws IOException {
+        if (inputStreamSource instanceof ZipEntryInputStreamSource) {
+            // the entry's content fingerprint still matches if the zip is rebuilt, e.g. a feature pack
+            final ZipEntryInputStreamSource zipEntryInputStreamSource = (ZipEntryInputStreamSource) inputStreamSource;
+            final ZipEntry zipEntry = zipEntryInputStreamSource.getZipEntry();
+            if (zipEntry == null) {
+                return null;
+            }
+            return "zip=" + zipEntryInputStreamSource.getFile().getAbsolutePath() + ",entry=" + zipEntry.getName() + "," + fingerprint(zipEntry);
+        }
+        if (inputStreamSource instanceof FileInputStreamSource) {
+            return fingerprint(((FileInputStreamSource) inputStreamSource).getFile());
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param fingerprint a fingerprint, e.g. composed of the fingerprints of many sources
+     * @return the SHA-1 digest of the fingerprint, in hex
+     */
+    static String digest(String fingerprint) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest(fingerprint.getBytes(StandardCharsets.UTF_8))) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
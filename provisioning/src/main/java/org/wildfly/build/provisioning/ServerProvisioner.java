@@ -16,40 +16,42 @@
 
 package org.wildfly.build.provisioning;
 
-import nu.xom.Attribute;
-import nu.xom.Document;
-import nu.xom.Element;
-import nu.xom.Serializer;
 import org.jboss.logging.Logger;
 import org.wildfly.build.ArtifactFileResolver;
 import org.wildfly.build.ArtifactResolver;
+import org.wildfly.build.CachingArtifactFileResolver;
 import org.wildfly.build.Locations;
 import org.wildfly.build.common.model.ConfigFile;
 import org.wildfly.build.common.model.ConfigFileOverride;
 import org.wildfly.build.common.model.CopyArtifact;
-import org.wildfly.build.common.model.FileFilter;
 import org.wildfly.build.common.model.FilePermission;
 import org.wildfly.build.configassembly.ConfigurationAssembler;
 import org.wildfly.build.configassembly.SubsystemConfig;
+import org.wildfly.build.configassembly.SubsystemTemplateCache;
 import org.wildfly.build.pack.model.Artifact;
 import org.wildfly.build.pack.model.FeaturePack;
-import org.wildfly.build.pack.model.FeaturePackFactory;
+import org.wildfly.build.pack.model.FeaturePackRegistry;
 import org.wildfly.build.pack.model.ModuleIdentifier;
 import org.wildfly.build.provisioning.model.ServerProvisioning;
 import org.wildfly.build.provisioning.model.ServerProvisioningDescription;
 import org.wildfly.build.provisioning.model.ServerProvisioningFeaturePack;
+import org.wildfly.build.util.ArchiveEntryIndex;
+import org.wildfly.build.util.ArchiveRegistry;
 import org.wildfly.build.util.BuildPropertyReplacer;
 import org.wildfly.build.util.FileUtils;
 import org.wildfly.build.util.ModuleArtifactPropertyResolver;
 import org.wildfly.build.util.ModuleParseResult;
+import org.wildfly.build.util.ModuleXmlRewriter;
+import org.wildfly.build.util.ParallelTasks;
 import org.wildfly.build.util.ZipEntryInputStreamSource;
 
 import javax.xml.stream.XMLStreamException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -58,13 +60,14 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarFile;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -77,72 +80,160 @@ public class ServerProvisioner {
 
     private static final Logger logger = Logger.getLogger(ServerProvisioner.class);
 
-    private static final String SUBSYSTEM_SCHEMA_TARGET_DIRECTORY = "docs" + File.separator + "schema";
+    private static final String SUBSYSTEM_SCHEMA_TARGET_DIRECTORY = "docs/schema";
 
     private static final boolean OS_WINDOWS = System.getProperty("os.name").contains("indows");
 
+    /**
+     * the system property which, if true, makes the file permissions be applied by a single walk of the output directory,
+     * once provisioned, instead of when each file is written
+     */
+    public static final String PERMISSION_WALK_PROPERTY = "wildfly.provision.permission-walk";
+
     private final ServerProvisioningDescription description;
 
     private final File outputDirectory;
 
-    private final ArtifactFileResolver artifactFileResolver;
+    private final CachingArtifactFileResolver artifactFileResolver;
 
     private final ArtifactResolver versionOverrideArtifactResolver;
 
     private final boolean overlay;
 
+    private final int parallelism;
+
+    private final boolean incremental;
+
+    private final LinkStrategy linkStrategy;
+
+    private final ArtifactFileCopier artifactFileCopier;
+
+    private final OutputFormat outputFormat;
+
+    private ProvisioningManifest manifest;
+
+    private OutputSink outputSink;
+
+    private ArchiveRegistry archiveRegistry;
+
+    private JandexIndexCache jandexIndexCache;
+
     public ServerProvisioner(ServerProvisioningDescription description, File outputDirectory, boolean overlay, ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideArtifactResolver) {
+        this(description, outputDirectory, overlay, artifactFileResolver, versionOverrideArtifactResolver, new ServerProvisioningOptions());
+    }
+
+    /**
+     *
+     * @param description the server provisioning description
+     * @param outputDirectory the directory where the server is provisioned, with an archive output format the archive file is named after it, see {@link OutputFormat#getOutputFile(File)}
+     * @param overlay if true only the feature packs content is provisioned, and no configs are assembled
+     * @param artifactFileResolver the resolver of artifact files, each artifact is resolved once per provisioning
+     * @param versionOverrideArtifactResolver the resolver of artifact version overrides
+     * @param options how the server is provisioned
+     */
+    public ServerProvisioner(ServerProvisioningDescription description, File outputDirectory, boolean overlay, ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideArtifactResolver, ServerProvisioningOptions options) {
         this.description = description;
         this.outputDirectory = outputDirectory;
         this.overlay = overlay;
-        this.artifactFileResolver = artifactFileResolver;
+        this.artifactFileResolver = CachingArtifactFileResolver.of(artifactFileResolver);
         this.versionOverrideArtifactResolver = versionOverrideArtifactResolver;
+        this.parallelism = ParallelTasks.parallelism(options.getParallelism());
+        this.incremental = options.isIncremental();
+        this.linkStrategy = options.getLinkStrategy();
+        this.artifactFileCopier = new ArtifactFileCopier(linkStrategy);
+        this.outputFormat = options.getOutputFormat();
     }
 
     public void build() {
-        final ServerProvisioning serverProvisioning = new ServerProvisioning(description);
+        // the archives opened during the provisioning are shared, and closed once done
+        final ArchiveEntryIndex archiveEntryIndex = ArchiveEntryIndex.load(ArchiveEntryIndex.getDefaultIndexFile());
+        archiveRegistry = new ArchiveRegistry(ArchiveRegistry.DEFAULT_MAX_IDLE_ARCHIVES, archiveEntryIndex);
+        jandexIndexCache = new JandexIndexCache(JandexIndexCache.getDefaultDirectory());
+        final ServerProvisioning serverProvisioning = new ServerProvisioning(description, archiveRegistry);
         final List<String> errors = new ArrayList<>();
         try {
-            // create the feature packs
+            // create the feature packs, sharing the common dependencies
+            final FeaturePackRegistry featurePackRegistry = new FeaturePackRegistry(artifactFileResolver, versionOverrideArtifactResolver, archiveRegistry, parallelism);
+            final List<Artifact> featurePackArtifacts = new ArrayList<>();
             for (ServerProvisioningDescription.FeaturePack serverProvisioningFeaturePackDescription : description.getFeaturePacks()) {
-                final FeaturePack featurePack = FeaturePackFactory.createPack(serverProvisioningFeaturePackDescription.getArtifact(), artifactFileResolver, versionOverrideArtifactResolver);
-                serverProvisioning.getFeaturePacks().add(new ServerProvisioningFeaturePack(serverProvisioningFeaturePackDescription, featurePack, artifactFileResolver));
+                featurePackArtifacts.add(serverProvisioningFeaturePackDescription.getArtifact());
+            }
+            final List<FeaturePack> featurePacks = featurePackRegistry.getFeaturePacks(featurePackArtifacts);
+            for (int i = 0; i < featurePacks.size(); i++) {
+                serverProvisioning.getFeaturePacks().add(new ServerProvisioningFeaturePack(description.getFeaturePacks().get(i), featurePacks.get(i), artifactFileResolver));
+            }
+            // resolve all artifacts upfront, in bulk
+            prefetchArtifacts(serverProvisioning);
+            final FilePermissionResolver filePermissionResolver = createFilePermissionResolver(serverProvisioning);
+            // the file permissions are applied by a walk of the output directory, instead of when each file is written, if requested, or if there are unchanged files which are not written
+            boolean permissionWalk = false;
+            if (outputFormat == OutputFormat.DIRECTORY) {
+                // create output dir, unless the previous one may be reused, the manifest is only kept by incremental provisionings
+                if (incremental) {
+                    manifest = ProvisioningManifest.load(outputDirectory);
+                } else {
+                    ProvisioningManifest.deleteStored(outputDirectory);
+                    manifest = ProvisioningManifest.notStored(outputDirectory);
+                }
+                if (manifest.isIncremental()) {
+                    getLog().debugf("Incremental provisioning of %s", outputDirectory);
+                } else {
+                    FileUtils.deleteRecursive(outputDirectory);
+                }
+                outputDirectory.mkdirs();
+                permissionWalk = !OS_WINDOWS && (manifest.isIncremental() || Boolean.getBoolean(PERMISSION_WALK_PROPERTY));
+                outputSink = new DirectoryOutputSink(outputDirectory, artifactFileCopier, OS_WINDOWS || permissionWalk ? null : filePermissionResolver);
+            } else {
+                // an archive is always fully written
+                if (incremental) {
+                    getLog().debugf("Incremental provisioning not supported with output format %s", outputFormat);
+                }
+                manifest = ProvisioningManifest.notStored(outputDirectory);
+                outputSink = createArchiveOutputSink(filePermissionResolver);
             }
-            // create output dir
-            FileUtils.deleteRecursive(outputDirectory);
-            outputDirectory.mkdirs();
             // create schema output dir if needed
-            final File schemaOutputDirectory;
+            final String schemaOutputDirectory;
             if (description.isExtractSchemas()) {
-                schemaOutputDirectory = new File(outputDirectory, SUBSYSTEM_SCHEMA_TARGET_DIRECTORY);
-                if (!schemaOutputDirectory.exists()) {
-                    schemaOutputDirectory.mkdirs();
-                }
+                schemaOutputDirectory = SUBSYSTEM_SCHEMA_TARGET_DIRECTORY;
+                outputSink.mkdirs(schemaOutputDirectory);
             } else {
                 schemaOutputDirectory = null;
             }
             final Set<String> filesProcessed = new HashSet<>();
             // process server provisioning copy-artifacts
-            processCopyArtifacts(serverProvisioning.getDescription().getCopyArtifacts(), versionOverrideArtifactResolver, outputDirectory, filesProcessed, artifactFileResolver, schemaOutputDirectory);
+            processCopyArtifacts(serverProvisioning.getDescription().getCopyArtifacts(), versionOverrideArtifactResolver, filesProcessed, artifactFileResolver, schemaOutputDirectory);
             // process modules (needs to be done for all feature packs before any config is processed, due to subsystem template gathering)
-            processModules(serverProvisioning, outputDirectory, filesProcessed, artifactFileResolver, schemaOutputDirectory);
+            processModules(serverProvisioning, filesProcessed, artifactFileResolver, schemaOutputDirectory);
 
             // process everything else for each feature pack
             for (ServerProvisioningFeaturePack provisioningFeaturePack : serverProvisioning.getFeaturePacks()) {
                 if ( ! overlay ) {
                     processSubsystemConfigInFeaturePack(provisioningFeaturePack, serverProvisioning, artifactFileResolver);
                 }
-                processFeaturePackCopyArtifacts(provisioningFeaturePack.getFeaturePack(), outputDirectory, filesProcessed, artifactFileResolver, schemaOutputDirectory, overlay || description.isExcludeDependencies());
-                processProvisioningFeaturePackContents(provisioningFeaturePack, outputDirectory, filesProcessed, overlay || description.isExcludeDependencies());
-                processFeaturePackFilePermissions(provisioningFeaturePack.getFeaturePack(), outputDirectory, overlay || description.isExcludeDependencies());
+                processFeaturePackCopyArtifacts(provisioningFeaturePack.getFeaturePack(), filesProcessed, artifactFileResolver, schemaOutputDirectory, overlay || description.isExcludeDependencies());
+                processProvisioningFeaturePackContents(provisioningFeaturePack, filesProcessed, overlay || description.isExcludeDependencies());
             }
             // process the server config
             if ( ! overlay ) {
-                processConfig(serverProvisioning, outputDirectory, filesProcessed);
+                processConfig(serverProvisioning, filesProcessed);
+            }
+            outputSink.close();
+            if (permissionWalk) {
+                applyFilePermissions(filePermissionResolver);
             }
+            // remove what is left from the previous provisioning, and store the manifest of this one
+            manifest.deleteStaleFiles();
+            manifest.store();
+            archiveEntryIndex.store();
         } catch (Throwable e) {
+            if (outputSink != null) {
+                outputSink.discard();
+            }
             throw new RuntimeException(e);
         } finally {
+            archiveRegistry.close();
+            artifactFileResolver.logStatistics();
+            artifactFileCopier.logStatistics();
             if (!errors.isEmpty()) {
                 StringBuilder sb = new StringBuilder();
                 sb.append("Some errors were encountered creating the feature pack\n");
@@ -156,6 +247,56 @@ public class ServerProvisioner {
 
     }
 
+    /**
+     * Resolves, with a single bulk resolution, the artifacts referenced by the feature packs modules and copy artifacts,
+     * and by the server provisioning copy artifacts.
+     * @param serverProvisioning
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    private void prefetchArtifacts(ServerProvisioning serverProvisioning) throws IOException, XMLStreamException {
+        final Set<Artifact> artifacts = new LinkedHashSet<>();
+        addCopyArtifacts(serverProvisioning.getDescription().getCopyArtifacts(), versionOverrideArtifactResolver, artifacts);
+        final Set<FeaturePack> featurePacksProcessed = new HashSet<>();
+        for (ServerProvisioningFeaturePack provisioningFeaturePack : serverProvisioning.getFeaturePacks()) {
+            for (FeaturePack.Module module : provisioningFeaturePack.getModules(artifactFileResolver, false).values()) {
+                for (ModuleParseResult.ArtifactName artifactName : module.getModuleParseResult().getArtifacts()) {
+                    final Artifact artifact = artifactName.hasVersion() ? artifactName.getArtifact() : module.getFeaturePack().getArtifactResolver().getArtifact(artifactName.getArtifact());
+                    // unresolvable artifacts are reported when processing the module
+                    if (artifact != null) {
+                        artifacts.add(artifact);
+                    }
+                }
+            }
+            addFeaturePackCopyArtifacts(provisioningFeaturePack.getFeaturePack(), featurePacksProcessed, artifacts);
+        }
+        getLog().debugf("Resolving %s artifacts", artifacts.size());
+        artifactFileResolver.getArtifactFiles(artifacts);
+    }
+
+    private static void addFeaturePackCopyArtifacts(FeaturePack featurePack, Set<FeaturePack> featurePacksProcessed, Set<Artifact> artifacts) {
+        if (!featurePacksProcessed.add(featurePack)) {
+            return;
+        }
+        addCopyArtifacts(featurePack.getDescription().getCopyArtifacts(), featurePack.getArtifactResolver(), artifacts);
+        for (FeaturePack dependency : featurePack.getDependencies()) {
+            addFeaturePackCopyArtifacts(dependency, featurePacksProcessed, artifacts);
+        }
+    }
+
+    private static void addCopyArtifacts(List<CopyArtifact> copyArtifacts, ArtifactResolver artifactResolver, Set<Artifact> artifacts) {
+        for (CopyArtifact copyArtifact : copyArtifacts) {
+            Artifact artifact = copyArtifact.getArtifact();
+            if (artifact.getVersion() == null) {
+                // unresolvable artifacts are reported when processing the copy artifact
+                artifact = artifactResolver != null ? artifactResolver.getArtifact(artifact) : null;
+            }
+            if (artifact != null) {
+                artifacts.add(artifact);
+            }
+        }
+    }
+
     private void processSubsystemConfigInFeaturePack(ServerProvisioningFeaturePack provisioningFeaturePack, ServerProvisioning serverProvisioning, ArtifactFileResolver artifactFileResolver) throws IOException {
 
         File artifactFile = artifactFileResolver.getArtifactFile(provisioningFeaturePack.getFeaturePack().getArtifact());
@@ -164,11 +305,50 @@ public class ServerProvisioner {
     }
 
     public static void build(ServerProvisioningDescription description, File outputDirectory, boolean overlay, ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideArtifactResolver) {
-        ServerProvisioner provisioner = new ServerProvisioner(description, outputDirectory, overlay, artifactFileResolver, versionOverrideArtifactResolver);
+        build(description, outputDirectory, overlay, artifactFileResolver, versionOverrideArtifactResolver, new ServerProvisioningOptions());
+    }
+
+    public static void build(ServerProvisioningDescription description, File outputDirectory, boolean overlay, ArtifactFileResolver artifactFileResolver, ArtifactResolver versionOverrideArtifactResolver, ServerProvisioningOptions options) {
+        ServerProvisioner provisioner = new ServerProvisioner(description, outputDirectory, overlay, artifactFileResolver, versionOverrideArtifactResolver, options);
         provisioner.build();
     }
 
-    private void processCopyArtifacts(List<CopyArtifact> copyArtifacts, ArtifactResolver artifactResolver, File outputDirectory, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, File schemaOutputDirectory) throws IOException {
+    /**
+     * Creates the resolver of the provisioned files permissions, from the file permissions of the provisioning feature
+     * packs, each followed by the ones of its dependencies, unless excluded.
+     */
+    private FilePermissionResolver createFilePermissionResolver(ServerProvisioning serverProvisioning) {
+        final List<FilePermission> filePermissions = new ArrayList<>();
+        for (ServerProvisioningFeaturePack provisioningFeaturePack : serverProvisioning.getFeaturePacks()) {
+            addFeaturePackFilePermissions(provisioningFeaturePack.getFeaturePack(), overlay || description.isExcludeDependencies(), filePermissions);
+        }
+        return new FilePermissionResolver(filePermissions);
+    }
+
+    private OutputSink createArchiveOutputSink(FilePermissionResolver filePermissionResolver) throws IOException {
+        final File archiveFile = outputFormat.getOutputFile(outputDirectory);
+        final String rootDir = outputDirectory.getAbsoluteFile().getName();
+        getLog().debugf("Provisioning server to archive %s", archiveFile);
+        switch (outputFormat) {
+            case ZIP:
+                return new ZipOutputSink(archiveFile, rootDir, filePermissionResolver, parallelism);
+            case TAR_GZ:
+                return new TarGzOutputSink(archiveFile, rootDir, filePermissionResolver, parallelism);
+            default:
+                throw new IllegalStateException("Output format " + outputFormat + " is not an archive");
+        }
+    }
+
+    private static void addFeaturePackFilePermissions(FeaturePack featurePack, boolean excludeDependencies, List<FilePermission> filePermissions) {
+        filePermissions.addAll(featurePack.getDescription().getFilePermissions());
+        if (!excludeDependencies) {
+            for (FeaturePack dependency : featurePack.getDependencies()) {
+                addFeaturePackFilePermissions(dependency, excludeDependencies, filePermissions);
+            }
+        }
+    }
+
+    private void processCopyArtifacts(List<CopyArtifact> copyArtifacts, ArtifactResolver artifactResolver, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, String schemaOutputDirectory) throws IOException {
         Set<String> filesProcessedThisPack = new HashSet<>();
         for (CopyArtifact copyArtifact : copyArtifacts) {
 
@@ -190,16 +370,10 @@ public class ServerProvisioner {
                 continue;
             }
             filesProcessedThisPack.add(location);
-            File target = new File(outputDirectory, location);
-            if (!target.getParentFile().isDirectory()) {
-                if (!target.getParentFile().mkdirs()) {
-                    throw new IOException("Could not create directory " + target.getParentFile());
-                }
-            }
             if (copyArtifact.isExtract()) {
-                extractArtifact(artifactFile, target, copyArtifact);
-            } else {
-                FileUtils.copyFile(artifactFile, target);
+                extractArtifact(artifactFile, location, copyArtifact);
+            } else if (!manifest.isUpToDate(location, ProvisioningManifest.fingerprint(artifactFile, linkStrategy))) {
+                outputSink.copyFile(artifactFile, location);
             }
 
             extractSchema(schemaOutputDirectory, artifact, artifactFile);
@@ -207,21 +381,44 @@ public class ServerProvisioner {
         filesProcessed.addAll(filesProcessedThisPack);
     }
 
-    private void extractSchema(File schemaOutputDirectory, Artifact artifact, File artifactFile) throws IOException {
+    private void extractSchema(String schemaOutputDirectory, Artifact artifact, File artifactFile) throws IOException {
         if (description.isExtractSchemas() && schemaOutputDirectory != null) {
             String groupId = artifact.getGroupId();
             // extract schemas, if any
             if (description.getExtractSchemasGroups().contains(groupId)) {
                 logger.debugf("extracting schemas for artifact: '%s'", artifact);
-                FileUtils.extractSchemas(artifactFile, schemaOutputDirectory);
+                extractSchemas(artifactFile, schemaOutputDirectory);
+            }
+        }
+    }
+
+    private void extractSchemas(File artifactFile, String schemaOutputDirectory) throws IOException {
+        // schemas are in dir 'schema', the archive entry index avoids opening artifacts without it
+        final List<String> entryNames = archiveRegistry.getIndexedEntries(artifactFile);
+        if (!entryNames.contains(ArchiveEntryIndex.SCHEMA_DIR)) {
+            return;
+        }
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(artifactFile)) {
+            final ZipFile zip = archive.getZipFile();
+            for (String entryName : entryNames) {
+                if (entryName.startsWith(ArchiveEntryIndex.SCHEMA_DIR) && entryName.length() > ArchiveEntryIndex.SCHEMA_DIR.length()) {
+                    final ZipEntry entry = zip.getEntry(entryName);
+                    if (entry == null) {
+                        throw new IOException(entryName + " not found in " + artifactFile);
+                    }
+                    final String schemaFile = entryName.substring(ArchiveEntryIndex.SCHEMA_DIR.length());
+                    if (!manifest.isUpToDate(schemaOutputDirectory + "/" + schemaFile, ProvisioningManifest.fingerprint(entry))) {
+                        outputSink.extractFile(zip, entry, schemaOutputDirectory + "/" + schemaFile);
+                    }
+                }
             }
         }
     }
 
 
-    private void processModules(ServerProvisioning serverProvisioning, File outputDirectory, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, File schemaOutputDirectory) throws IOException, XMLStreamException {
+    private void processModules(ServerProvisioning serverProvisioning, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, String schemaOutputDirectory) throws Exception {
         // 1. gather the modules for each feature pack
-        final Map<FeaturePack, List<FeaturePack.Module>> featurePackModulesMap = new HashMap<>();
+        final Map<FeaturePack, List<FeaturePack.Module>> featurePackModulesMap = new LinkedHashMap<>();
         Set<ModuleIdentifier> moduleIdentifiers = new HashSet<>();
         for (ServerProvisioningFeaturePack provisioningFeaturePack : serverProvisioning.getFeaturePacks()) {
             getLog().debugf("Gathering modules for provisioning feature pack %s", provisioningFeaturePack.getFeaturePack().getFeaturePackFile());
@@ -259,174 +456,297 @@ public class ServerProvisioner {
             }
         }
         // 2. provision each feature pack modules
-        for (Map.Entry<FeaturePack, List<FeaturePack.Module>> mapEntry : featurePackModulesMap.entrySet()) {
-            FeaturePack featurePack = mapEntry.getKey();
-            List<FeaturePack.Module> includedModules = mapEntry.getValue();
-            processFeaturePackModules(featurePack, includedModules, serverProvisioning, outputDirectory, filesProcessed, artifactFileResolver, schemaOutputDirectory);
+        final List<ArchiveRegistry.Archive> featurePackArchives = new ArrayList<>();
+        try {
+            final List<ModuleTask> moduleTasks = new ArrayList<>();
+            for (Map.Entry<FeaturePack, List<FeaturePack.Module>> mapEntry : featurePackModulesMap.entrySet()) {
+                FeaturePack featurePack = mapEntry.getKey();
+                List<FeaturePack.Module> includedModules = mapEntry.getValue();
+                final ArchiveRegistry.Archive archive = archiveRegistry.open(featurePack.getFeaturePackFile());
+                featurePackArchives.add(archive);
+                processFeaturePackModules(featurePack, archive.getZipFile(), includedModules, serverProvisioning, filesProcessed, artifactFileResolver, moduleTasks);
+            }
+            getLog().debugf("Provisioning %s modules, with parallelism %s", moduleTasks.size(), parallelism);
+            ParallelTasks.run("module-provisioning", parallelism, moduleTasks);
+            // schemas are extracted afterwards, in the modules order, since distinct artifacts may contain the same schema files
+            for (ModuleTask moduleTask : moduleTasks) {
+                for (Map.Entry<Artifact, File> schemaArtifact : moduleTask.artifactFiles.entrySet()) {
+                    extractSchema(schemaOutputDirectory, schemaArtifact.getKey(), schemaArtifact.getValue());
+                }
+            }
+        } finally {
+            for (ArchiveRegistry.Archive archive : featurePackArchives) {
+                archive.close();
+            }
         }
     }
 
-    private void processFeaturePackModules(FeaturePack featurePack, List<FeaturePack.Module> includedModules, ServerProvisioning serverProvisioning, File outputDirectory, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, File schemaOutputDirectory) throws IOException {
+    private void processFeaturePackModules(FeaturePack featurePack, ZipFile jar, List<FeaturePack.Module> includedModules, ServerProvisioning serverProvisioning, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, List<ModuleTask> moduleTasks) {
         final boolean thinServer = !serverProvisioning.getDescription().isCopyModuleArtifacts();
         // create the module's artifact property replacer
         final BuildPropertyReplacer buildPropertyReplacer = thinServer ? new BuildPropertyReplacer(new ModuleArtifactPropertyResolver(featurePack.getArtifactResolver())) : null;
-        // process each module file
-        try (JarFile jar = new JarFile(featurePack.getFeaturePackFile())) {
-            for (FeaturePack.Module module : includedModules) {
-                // process the module file
-                final String jarEntryName = module.getModuleFile();
-                filesProcessed.add(jarEntryName);
-                File targetFile = new File(outputDirectory, jarEntryName);
-                // ensure parent dirs exist
-                targetFile.getParentFile().mkdirs();
-                // extract the module file
-                FileUtils.extractFile(jar, jarEntryName, targetFile);
-                // parse the module xml
-                ModuleParseResult result = module.getModuleParseResult();
-                // process module artifacts
-                for (ModuleParseResult.ArtifactName artifactName : result.getArtifacts()) {
-                    String options = artifactName.getOptions();
-                    boolean jandex = false;
-                    if (options != null) {
-                        jandex = options.contains("jandex"); //todo: eventually we may need options to have a proper query string type syntax
-                    }
-                    Artifact artifact;
-                    if(artifactName.hasVersion()) {
-                        artifact = artifactName.getArtifact();
+        for (FeaturePack.Module module : includedModules) {
+            // the processed files are tracked upfront, the module tasks may run concurrently
+            filesProcessed.add(module.getModuleFile());
+            filesProcessed.addAll(module.getModuleDirFiles());
+            moduleTasks.add(new ModuleTask(featurePack, jar, module, thinServer, buildPropertyReplacer, outputSink, artifactFileResolver, manifest, jandexIndexCache, linkStrategy));
+        }
+    }
+
+    /**
+     * The provisioning of a single module, which does not depend on the provisioning of any other module.
+     */
+    private static class ModuleTask implements Callable<Void> {
+
+        private final FeaturePack featurePack;
+        private final ZipFile jar;
+        private final FeaturePack.Module module;
+        private final boolean thinServer;
+        private final BuildPropertyReplacer buildPropertyReplacer;
+        private final OutputSink outputSink;
+        private final ArtifactFileResolver artifactFileResolver;
+        private final ProvisioningManifest manifest;
+        private final JandexIndexCache jandexIndexCache;
+        private final LinkStrategy linkStrategy;
+        /**
+         * the resolved module artifacts, and related files
+         */
+        private final Map<Artifact, File> artifactFiles = new LinkedHashMap<>();
+
+        private ModuleTask(FeaturePack featurePack, ZipFile jar, FeaturePack.Module module, boolean thinServer, BuildPropertyReplacer buildPropertyReplacer, OutputSink outputSink, ArtifactFileResolver artifactFileResolver, ProvisioningManifest manifest, JandexIndexCache jandexIndexCache, LinkStrategy linkStrategy) {
+            this.featurePack = featurePack;
+            this.jar = jar;
+            this.module = module;
+            this.thinServer = thinServer;
+            this.buildPropertyReplacer = buildPropertyReplacer;
+            this.outputSink = outputSink;
+            this.artifactFileResolver = artifactFileResolver;
+            this.manifest = manifest;
+            this.jandexIndexCache = jandexIndexCache;
+            this.linkStrategy = linkStrategy;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                processModule();
+            } catch (Throwable e) {
+                throw new RuntimeException("Failed to process feature pack " + featurePack.getFeaturePackFile() + " modules", e);
+            }
+            return null;
+        }
+
+        private void processModule() throws IOException, XMLStreamException {
+            // process the module file
+            final String jarEntryName = module.getModuleFile();
+            final String moduleDir = jarEntryName.substring(0, jarEntryName.lastIndexOf('/') + 1);
+            final ModuleParseResult result = module.getModuleParseResult();
+            // the new values of the module xml artifacts, null if unchanged
+            final List<String> artifactValues = new ArrayList<>(result.getArtifacts().size());
+            // process module artifacts
+            for (ModuleParseResult.ArtifactName artifactName : result.getArtifacts()) {
+                String options = artifactName.getOptions();
+                boolean jandex = false;
+                if (options != null) {
+                    jandex = options.contains("jandex"); //todo: eventually we may need options to have a proper query string type syntax
+                }
+                Artifact artifact;
+                if(artifactName.hasVersion()) {
+                    artifact = artifactName.getArtifact();
+                } else {
+                    artifact = featurePack.getArtifactResolver().getArtifact(artifactName.getArtifact());
+                }
+                if (artifact == null) {
+                    throw new RuntimeException("Could not resolve module resource artifact " + artifactName + " for feature pack " + featurePack.getFeaturePackFile());
+                }
+                try {
+                    if (thinServer) {
+                        // replace artifact coords properties with the ones expected by jboss-modules
+                        String orig = artifactName.getValue();
+                        if(orig.contains("?")) {
+                            orig = orig.substring(0, orig.indexOf("?")) + "}";
+                        }
+                        if(!artifactName.hasVersion()) {
+                            String repl = buildPropertyReplacer.replaceProperties(orig);
+                            artifactValues.add(repl.equals(orig) ? null : repl);
+                        } else {
+                            artifactValues.add(artifactName.getJBossModulesArtifactString());
+                        }
+                        File artifactFile = artifactFileResolver.getArtifactFile(artifact);
+                        // schemas extracted later, if needed
+                        artifactFiles.put(artifact, artifactFile);
                     } else {
-                        artifact = featurePack.getArtifactResolver().getArtifact(artifactName.getArtifact());
-                    }
-                    if (artifact == null) {
-                        throw new RuntimeException("Could not resolve module resource artifact " + artifactName + " for feature pack " + featurePack.getFeaturePackFile());
-                    }
-                    try {
-                        if (thinServer) {
-                            // replace artifact coords properties with the ones expected by jboss-modules
-                            String orig = artifactName.getAttribute().getValue();
-                            if(orig.contains("?")) {
-                                orig = orig.substring(0, orig.indexOf("?")) + "}";
-                            }
-                            if(!artifactName.hasVersion()) {
-                                String repl = buildPropertyReplacer.replaceProperties(orig);
-                                if (! repl.equals(orig)) {
-                                    artifactName.getAttribute().setValue(repl);
+                        // process the module artifact
+                        File artifactFile = artifactFileResolver.getArtifactFile(artifact);
+                        // schemas extracted later, if needed
+                        artifactFiles.put(artifact, artifactFile);
+                        String location;
+                        if (jandex) {
+                            String baseName = artifactFile.getName().substring(0, artifactFile.getName().lastIndexOf("."));
+                            String extension = artifactFile.getName().substring(artifactFile.getName().lastIndexOf("."));
+                            location = baseName + "-jandex" + extension;
+                            if (!manifest.isUpToDate(moduleDir + location, "jandex," + ProvisioningManifest.fingerprint(artifactFile))) {
+                                try (OutputStream out = outputSink.newOutputStream(moduleDir + location)) {
+                                    jandexIndexCache.writeIndex(artifactFile, out);
                                 }
-                            } else {
-                                artifactName.getAttribute().setValue(artifactName.getJBossModulesArtifactString());
                             }
-                            File artifactFile = artifactFileResolver.getArtifactFile(artifact);
-                            // extract schemas if needed
-                            extractSchema(schemaOutputDirectory, artifact, artifactFile);
                         } else {
-                            // process the module artifact
-                            File artifactFile = artifactFileResolver.getArtifactFile(artifact);
-                            // extract schemas if needed
-                            extractSchema(schemaOutputDirectory, artifact, artifactFile);
-                            String location;
-                            if (jandex) {
-                                String baseName = artifactFile.getName().substring(0, artifactFile.getName().lastIndexOf("."));
-                                String extension = artifactFile.getName().substring(artifactFile.getName().lastIndexOf("."));
-                                File target = new File(targetFile.getParent(), baseName + "-jandex" + extension);
-                                JandexIndexer.createIndex(artifactFile, new FileOutputStream(target));
-                                location = target.getName();
-                            } else {
-                                location = artifactFile.getName();
-                                // copy the artifact
-                                FileUtils.copyFile(artifactFile, new File(targetFile.getParent(), location));
+                            location = artifactFile.getName();
+                            // copy the artifact
+                            if (!manifest.isUpToDate(moduleDir + location, ProvisioningManifest.fingerprint(artifactFile, linkStrategy))) {
+                                outputSink.copyFile(artifactFile, moduleDir + location);
                             }
-                            // update module xml content
-                            final Attribute attribute = artifactName.getAttribute();
-                            final Element artifactNode = (Element) attribute.getParent();
-                            artifactNode.setLocalName("resource-root");
-                            attribute.setLocalName("path");
-                            attribute.setValue(location);
                         }
-                    } catch (Throwable t) {
-                        throw new RuntimeException("Could not extract resources from " + artifactName, t);
+                        // the module xml artifact is replaced by a resource root
+                        artifactValues.add(location);
                     }
+                } catch (Throwable t) {
+                    throw new RuntimeException("Could not extract resources from " + artifactName, t);
                 }
-                // update the version, if there is one
-                final ModuleParseResult.ArtifactName versionArtifactName = result.getVersionArtifactName();
-                if (versionArtifactName != null) {
-                    Artifact artifact = featurePack.getArtifactResolver().getArtifact(versionArtifactName.getArtifact());
-                    if (artifact == null) {
-                        throw new RuntimeException("Could not resolve module resource artifact " + versionArtifactName + " for feature pack " + featurePack.getFeaturePackFile());
-                    }
-                    // set the resolved version
-                    versionArtifactName.getAttribute().setValue(artifact.getVersion());
+            }
+            // update the version, if there is one
+            final ModuleParseResult.ArtifactName versionArtifactName = result.getVersionArtifactName();
+            String version = null;
+            if (versionArtifactName != null) {
+                Artifact artifact = featurePack.getArtifactResolver().getArtifact(versionArtifactName.getArtifact());
+                if (artifact == null) {
+                    throw new RuntimeException("Could not resolve module resource artifact " + versionArtifactName + " for feature pack " + featurePack.getFeaturePackFile());
                 }
-                // write updated module xml content
-                final Document document = result.getDocument();
-                try (FileOutputStream out = new FileOutputStream(targetFile)) {
-                    new Serializer(out).write(document);
+                // set the resolved version
+                version = artifact.getVersion();
+            }
+            // write updated module xml content, the fingerprint includes the updated values
+            final StringBuilder fingerprint = new StringBuilder(ProvisioningManifest.fingerprint(jar.getEntry(jarEntryName)));
+            for (int i = 0; i < artifactValues.size(); i++) {
+                final String artifactValue = artifactValues.get(i);
+                fingerprint.append(',').append(thinServer ? "name" : "path").append('=').append(artifactValue != null ? artifactValue : result.getArtifacts().get(i).getValue());
+            }
+            if (version != null) {
+                fingerprint.append(",version=").append(version);
+            }
+            if (!manifest.isUpToDate(jarEntryName, fingerprint.toString())) {
+                try (OutputStream out = outputSink.newOutputStream(jarEntryName)) {
+                    new ModuleXmlRewriter(artifactValues, !thinServer, version).rewrite(jar.getInputStream(jar.getEntry(jarEntryName)), out);
                 }
+            }
 
-                // extract all other files in the module dir
-                for (String moduleDirFile : module.getModuleDirFiles()) {
-                    filesProcessed.add(moduleDirFile);
-                    FileUtils.extractFile(jar, moduleDirFile, new File(outputDirectory, moduleDirFile));
+            // extract all other files in the module dir
+            for (String moduleDirFile : module.getModuleDirFiles()) {
+                if (!manifest.isUpToDate(moduleDirFile, ProvisioningManifest.fingerprint(jar.getEntry(moduleDirFile)))) {
+                    outputSink.extractFile(jar, jar.getEntry(moduleDirFile), moduleDirFile);
                 }
             }
-        } catch (Throwable e) {
-            throw new RuntimeException("Failed to process feature pack " + featurePack.getFeaturePackFile() + " modules", e);
         }
     }
 
-    private void processConfig(ServerProvisioning serverProvisioning, File outputDirectory, Set<String> filesProcessed) throws IOException, XMLStreamException {
+    private void processConfig(ServerProvisioning serverProvisioning, Set<String> filesProcessed) throws IOException, XMLStreamException {
         ServerProvisioning.Config provisioningConfig = serverProvisioning.getConfig();
         // 1. collect and merge each feature pack configs
         for (ServerProvisioningFeaturePack provisioningFeaturePack : serverProvisioning.getFeaturePacks()) {
             processFeaturePackConfig(provisioningFeaturePack, provisioningConfig);
         }
-        // 2. assemble the merged configs
-        for (ServerProvisioning.ConfigFile provisioningConfigFile : provisioningConfig.getDomainConfigFiles().values()) {
-            if (provisioningConfigFile.getTemplateInputStreamSource() == null) {
-                getLog().debugf("Skipping assembly of config file %s, template not set.", provisioningConfigFile.getOutputFile());
-                continue;
+        // 2. assemble the merged configs concurrently, each subsystem template is parsed once for all configs, on first
+        // use, the templates of a single config are parsed concurrently instead
+        final SubsystemTemplateCache subsystemTemplateCache = new SubsystemTemplateCache(parallelism);
+        final List<ConfigTask> configTasks = new ArrayList<>();
+        addConfigTasks(provisioningConfig, provisioningConfig.getDomainConfigFiles(), "domain", subsystemTemplateCache, filesProcessed, configTasks);
+        addConfigTasks(provisioningConfig, provisioningConfig.getStandaloneConfigFiles(), "server", subsystemTemplateCache, filesProcessed, configTasks);
+        addConfigTasks(provisioningConfig, provisioningConfig.getHostConfigFiles(), "host", subsystemTemplateCache, filesProcessed, configTasks);
+        try {
+            ParallelTasks.run("config-assembly", parallelism, configTasks);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        // the configs are written in order, the output of archives does not depend on which config was assembled first
+        for (ConfigTask configTask : configTasks) {
+            try (OutputStream out = outputSink.newOutputStream(configTask.configFile.getOutputFile())) {
+                configTask.content.writeTo(out);
             }
-            getLog().debugf("Assembling config file %s", provisioningConfigFile.getOutputFile());
-            filesProcessed.add(provisioningConfigFile.getOutputFile());
-            new ConfigurationAssembler(provisioningConfig.getInputStreamSources(),
-                                       provisioningConfigFile.getTemplateInputStreamSource(),
-                                       "domain",
-                                       provisioningConfigFile.getSubsystems(),
-                                       new File(outputDirectory, provisioningConfigFile.getOutputFile()))
-                    .assemble();
         }
-        for (ServerProvisioning.ConfigFile provisioningConfigFile : provisioningConfig.getStandaloneConfigFiles().values()) {
+    }
+
+    private void addConfigTasks(ServerProvisioning.Config provisioningConfig, Map<String, ServerProvisioning.ConfigFile> configFiles, String templateRootElementName, SubsystemTemplateCache subsystemTemplateCache, Set<String> filesProcessed, List<ConfigTask> configTasks) throws IOException {
+        for (ServerProvisioning.ConfigFile provisioningConfigFile : configFiles.values()) {
             if (provisioningConfigFile.getTemplateInputStreamSource() == null) {
                 getLog().debugf("Skipping assembly of config file %s, template not set.", provisioningConfigFile.getOutputFile());
                 continue;
             }
-            getLog().debugf("Assembling config file %s", provisioningConfigFile.getOutputFile());
             filesProcessed.add(provisioningConfigFile.getOutputFile());
-            new ConfigurationAssembler(provisioningConfig.getInputStreamSources(),
-                                       provisioningConfigFile.getTemplateInputStreamSource(),
-                                       "server",
-                                       provisioningConfigFile.getSubsystems(),
-                                       new File(outputDirectory, provisioningConfigFile.getOutputFile()))
-                    .assemble();
-        }
-        for (ServerProvisioning.ConfigFile provisioningConfigFile : provisioningConfig.getHostConfigFiles().values()) {
-            if (provisioningConfigFile.getTemplateInputStreamSource() == null) {
-                getLog().debugf("Skipping assembly of config file %s, template not set.", provisioningConfigFile.getOutputFile());
+            if (manifest.isUpToDate(provisioningConfigFile.getOutputFile(), fingerprint(provisioningConfig, provisioningConfigFile, templateRootElementName))) {
                 continue;
             }
-            getLog().debugf("Assembling config file %s", provisioningConfigFile.getOutputFile());
-            filesProcessed.add(provisioningConfigFile.getOutputFile());
+            configTasks.add(new ConfigTask(provisioningConfig, provisioningConfigFile, templateRootElementName, subsystemTemplateCache));
+        }
+    }
+
+    /**
+     *
+     * @return the fingerprint of all sources of an assembled config, i.e. its template, and the subsystem templates with their supplements, null if a source has no fingerprint
+     */
+    private static String fingerprint(ServerProvisioning.Config provisioningConfig, ServerProvisioning.ConfigFile provisioningConfigFile, String templateRootElementName) throws IOException {
+        final String templateFingerprint = ProvisioningManifest.fingerprint(provisioningConfigFile.getTemplateInputStreamSource());
+        if (templateFingerprint == null) {
+            return null;
+        }
+        final StringBuilder fingerprint = new StringBuilder("root=").append(templateRootElementName)
+                .append(",charset=").append(StandardCharsets.UTF_8.name())
+                .append(",template=").append(templateFingerprint);
+        for (Map.Entry<String, Map<String, SubsystemConfig>> profile : new TreeMap<>(provisioningConfigFile.getSubsystems()).entrySet()) {
+            fingerprint.append(",profile=").append(profile.getKey());
+            for (SubsystemConfig subsystem : profile.getValue().values()) {
+                final String subsystemFingerprint = ProvisioningManifest.fingerprint(provisioningConfig.getInputStreamSources().getInputStreamSource(subsystem.getSubsystem()));
+                if (subsystemFingerprint == null) {
+                    return null;
+                }
+                fingerprint.append(",subsystem=").append(subsystem.getSubsystem())
+                        .append(",supplement=").append(subsystem.getSupplement())
+                        .append(',').append(subsystemFingerprint);
+            }
+        }
+        return "config=" + ProvisioningManifest.digest(fingerprint.toString());
+    }
+
+    /**
+     * The assembly of a single config, which does not depend on the assembly of any other config.
+     */
+    private static class ConfigTask implements Callable<Void> {
+
+        private final ServerProvisioning.Config provisioningConfig;
+        private final ServerProvisioning.ConfigFile configFile;
+        private final String templateRootElementName;
+        private final SubsystemTemplateCache subsystemTemplateCache;
+        /**
+         * the assembled config
+         */
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        private ConfigTask(ServerProvisioning.Config provisioningConfig, ServerProvisioning.ConfigFile configFile, String templateRootElementName, SubsystemTemplateCache subsystemTemplateCache) {
+            this.provisioningConfig = provisioningConfig;
+            this.configFile = configFile;
+            this.templateRootElementName = templateRootElementName;
+            this.subsystemTemplateCache = subsystemTemplateCache;
+        }
+
+        @Override
+        public Void call() throws IOException, XMLStreamException {
+            getLog().debugf("Assembling config file %s", configFile.getOutputFile());
             new ConfigurationAssembler(provisioningConfig.getInputStreamSources(),
-                                       provisioningConfigFile.getTemplateInputStreamSource(),
-                                       "host",
-                                       provisioningConfigFile.getSubsystems(),
-                                       new File(outputDirectory, provisioningConfigFile.getOutputFile()))
-                    .assemble();
+                                       configFile.getTemplateInputStreamSource(),
+                                       templateRootElementName,
+                                       configFile.getSubsystems(),
+                                       subsystemTemplateCache)
+                    .assemble(content);
+            return null;
         }
     }
 
     private void processFeaturePackConfig(ServerProvisioningFeaturePack provisioningFeaturePack, ServerProvisioning.Config provisioningConfig) throws IOException, XMLStreamException {
         FeaturePack featurePack = provisioningFeaturePack.getFeaturePack();
         getLog().debug("Processing provisioning feature pack " + featurePack.getFeaturePackFile() + " configs");
-        try (ZipFile zipFile = new ZipFile(featurePack.getFeaturePackFile())) {
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(featurePack.getFeaturePackFile())) {
+            final ZipFile zipFile = archive.getZipFile();
             for (ServerProvisioningFeaturePack.ConfigFile serverProvisioningFeaturePackConfigFile : provisioningFeaturePack.getDomainConfigFiles()) {
                 processFeaturePackConfigFile(serverProvisioningFeaturePackConfigFile, zipFile, provisioningFeaturePack, provisioningConfig.getDomainConfigFiles());
             }
@@ -458,7 +778,7 @@ public class ServerProvisioner {
                 throw new RuntimeException("Feature pack " + provisioningFeaturePack.getFeaturePack().getFeaturePackFile() + " template file " + configFile.getTemplate() + " not found");
             }
             // set the input stream source
-            provisioningConfigFile.setTemplateInputStreamSource(new ZipEntryInputStreamSource(provisioningFeaturePack.getFeaturePack().getFeaturePackFile(), templateFileZipEntry));
+            provisioningConfigFile.setTemplateInputStreamSource(new ZipEntryInputStreamSource(provisioningFeaturePack.getFeaturePack().getFeaturePackFile(), templateFileZipEntry, archiveRegistry));
         }
         // get this config file subsystems
         Map<String, Map<String, SubsystemConfig>> subsystems = serverProvisioningFeaturePackConfigFile.getSubsystems();
@@ -484,35 +804,30 @@ public class ServerProvisioner {
         }
     }
 
-    private void processFeaturePackCopyArtifacts(FeaturePack featurePack, File outputDirectory, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, File schemaOutputDirectory, boolean excludeDependencies) throws IOException {
-        processCopyArtifacts(featurePack.getDescription().getCopyArtifacts(), featurePack.getArtifactResolver(), outputDirectory, filesProcessed, artifactFileResolver, schemaOutputDirectory);
+    private void processFeaturePackCopyArtifacts(FeaturePack featurePack, Set<String> filesProcessed, ArtifactFileResolver artifactFileResolver, String schemaOutputDirectory, boolean excludeDependencies) throws IOException {
+        processCopyArtifacts(featurePack.getDescription().getCopyArtifacts(), featurePack.getArtifactResolver(), filesProcessed, artifactFileResolver, schemaOutputDirectory);
         if (!excludeDependencies) {
             for (FeaturePack dependency : featurePack.getDependencies()) {
-                processFeaturePackCopyArtifacts(dependency, outputDirectory, filesProcessed, artifactFileResolver, schemaOutputDirectory, excludeDependencies);
+                processFeaturePackCopyArtifacts(dependency, filesProcessed, artifactFileResolver, schemaOutputDirectory, excludeDependencies);
             }
         }
     }
 
-    private void processProvisioningFeaturePackContents(ServerProvisioningFeaturePack provisioningFeaturePack, File outputDirectory, Set<String> filesProcessed, boolean excludeDependencies) throws IOException {
+    private void processProvisioningFeaturePackContents(ServerProvisioningFeaturePack provisioningFeaturePack, Set<String> filesProcessed, boolean excludeDependencies) throws IOException {
         if (provisioningFeaturePack.getDescription().includesContentFiles()) {
-            processFeaturePackContents(provisioningFeaturePack.getFeaturePack(), provisioningFeaturePack.getDescription().getContentFilters(), outputDirectory, filesProcessed, excludeDependencies);
+            processFeaturePackContents(provisioningFeaturePack.getFeaturePack(), provisioningFeaturePack.getDescription().getContentFilters(), filesProcessed, excludeDependencies);
         }
     }
 
-    private void processFeaturePackContents(FeaturePack featurePack, ServerProvisioningDescription.FeaturePack.ContentFilters contentFilters, File outputDirectory, Set<String> filesProcessed, boolean excludeDependencies) throws IOException {
+    private void processFeaturePackContents(FeaturePack featurePack, ServerProvisioningDescription.FeaturePack.ContentFilters contentFilters, Set<String> filesProcessed, boolean excludeDependencies) throws IOException {
         final int fileNameWithoutContentsStart = Locations.CONTENT.length() + 1;
-        try (JarFile jar = new JarFile(featurePack.getFeaturePackFile())) {
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(featurePack.getFeaturePackFile())) {
+            final ZipFile jar = archive.getZipFile();
             for (String contentFile : featurePack.getContentFiles()) {
                 final String outputFile = contentFile.substring(fileNameWithoutContentsStart);
                 boolean include = true;
                 if (contentFilters != null) {
-                    include = contentFilters.isInclude();
-                    for (FileFilter contentFilter : contentFilters.getFilters()) {
-                        if (contentFilter.matches(outputFile) && !contentFilter.isInclude()) {
-                            include = false;
-                            break;
-                        }
-                    }
+                    include = contentFilters.isInclude() && !contentFilters.isExcluded(outputFile);
                 }
                 if (!include) {
                     getLog().debugf("Skipping feature pack %s filtered content file %s", featurePack.getFeaturePackFile(), outputFile);
@@ -523,67 +838,61 @@ public class ServerProvisioner {
                     continue;
                 }
                 getLog().debugf("Adding feature pack %s content file %s", featurePack.getFeaturePackFile(), outputFile);
-                FileUtils.extractFile(jar, contentFile, new java.io.File(outputDirectory, outputFile));
+                if (!manifest.isUpToDate(outputFile, ProvisioningManifest.fingerprint(jar.getEntry(contentFile)))) {
+                    outputSink.extractFile(jar, jar.getEntry(contentFile), outputFile);
+                }
             }
         }
         if (!excludeDependencies) {
             for (FeaturePack dependency : featurePack.getDependencies()) {
-                processFeaturePackContents(dependency, contentFilters, outputDirectory, filesProcessed, excludeDependencies);
+                processFeaturePackContents(dependency, contentFilters, filesProcessed, excludeDependencies);
             }
         }
     }
 
-    private void processFeaturePackFilePermissions(FeaturePack featurePack, File outputDirectory, boolean excludeDependencies) throws IOException {
+    /**
+     * Applies the file permissions to the provisioned output directory, with a single walk.
+     */
+    private void applyFilePermissions(final FilePermissionResolver filePermissionResolver) throws IOException {
         final Path baseDir = Paths.get(outputDirectory.getAbsolutePath());
-        final List<FilePermission> filePermissions = featurePack.getDescription().getFilePermissions();
         Files.walkFileTree(baseDir, new SimpleFileVisitor<Path>() {
             @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                String relative = baseDir.relativize(dir).toString();
-                if (!OS_WINDOWS) {
-                    for (FilePermission perm : filePermissions) {
-                        if (perm.includeFile(relative)) {
-                            Files.setPosixFilePermissions(dir, perm.getPermission());
-                            continue;
-                        }
-                    }
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
                 }
+                // once the dir's files are done, a dir permission may remove write access
+                applyFilePermission(dir);
                 return FileVisitResult.CONTINUE;
             }
 
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                String relative = baseDir.relativize(file).toString();
-                if (!OS_WINDOWS) {
-                    for (FilePermission perm : filePermissions) {
-                        if (perm.includeFile(relative)) {
-                            Files.setPosixFilePermissions(file, perm.getPermission());
-                            continue;
-                        }
-                    }
-                }
+                applyFilePermission(file);
                 return FileVisitResult.CONTINUE;
             }
-        });
-        if (!excludeDependencies) {
-            for (FeaturePack dependency : featurePack.getDependencies()) {
-                processFeaturePackFilePermissions(dependency, outputDirectory, excludeDependencies);
+
+            private void applyFilePermission(Path path) throws IOException {
+                final FilePermission filePermission = filePermissionResolver.getFilePermission(OutputSink.normalize(baseDir.relativize(path).toString()));
+                if (filePermission != null) {
+                    ArtifactFileCopier.setPermission(path, filePermission.getPermission());
+                }
             }
-        }
+        });
     }
 
-    private void extractArtifact(File file, File target, CopyArtifact copy) throws IOException {
-        try (ZipFile zip = new ZipFile(file)) {
+    private void extractArtifact(File file, String location, CopyArtifact copy) throws IOException {
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(file)) {
+            final ZipFile zip = archive.getZipFile();
             Enumeration<? extends ZipEntry> entries = zip.entries();
             while (entries.hasMoreElements()) {
                 ZipEntry entry = entries.nextElement();
                 if (copy.includeFile(entry.getName())) {
+                    final String path = location + "/" + copy.relocatedPath(entry.getName());
                     if (entry.isDirectory()) {
-                        new File(target, copy.relocatedPath(entry.getName())).mkdirs();
-                    } else {
-                        try (InputStream in = zip.getInputStream(entry)) {
-                            FileUtils.copyFile(in, new File(target, copy.relocatedPath(entry.getName())));
-                        }
+                        outputSink.mkdirs(path);
+                    } else if (!manifest.isUpToDate(path, ProvisioningManifest.fingerprint(entry))) {
+                        outputSink.extractFile(zip, entry, path);
                     }
                 }
             }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+/**
+ * How a {@link ServerProvisioner} provisions a server. The defaults provision it sequentially, fully written in the
+ * output directory, with the artifact files copied.
+ */
+public class ServerProvisioningOptions {
+
+    private int parallelism = 1;
+
+    private boolean incremental;
+
+    private LinkStrategy linkStrategy = LinkStrategy.COPY;
+
+    private OutputFormat outputFormat = OutputFormat.DIRECTORY;
+
+    /**
+     *
+     * @return the max number of modules provisioned concurrently, and of archive entries compressed concurrently, values lower than 1 meaning the number of available processors
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     *
+     * @return true if, once the output directory was provisioned, only the files whose source changed are written, and the files no longer provisioned are deleted, ignored with an archive output format
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     *
+     * @return how module and copy artifact files are copied to the output directory
+     */
+    public LinkStrategy getLinkStrategy() {
+        return linkStrategy;
+    }
+
+    public void setLinkStrategy(LinkStrategy linkStrategy) {
+        this.linkStrategy = linkStrategy;
+    }
+
+    /**
+     *
+     * @return the form of the provisioned server
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+}
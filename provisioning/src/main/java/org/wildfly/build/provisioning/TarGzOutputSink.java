@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * An output sink which writes a gzip compressed tar file, in the ustar format, with a pax extended header for names
+ * which don't fit in the ustar header.
+ * <p>
+ * Each entry is compressed as a distinct gzip member, so entries may be compressed concurrently, and the members are
+ * concatenated, which is a valid gzip file.
+ */
+class TarGzOutputSink extends ArchiveOutputSink<TarGzOutputSink.Member> {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    private static final long MAX_SIZE = 077777777777L;
+    private static final byte[] PAX_HEADER_NAME = "././@PaxHeader".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, // magic
+            8, // deflate
+            0, // flags
+            0, 0, 0, 0, // mtime
+            0, // extra flags
+            (byte) 0xff // unknown os
+    };
+
+    /**
+     * the length of the uncompressed tar written
+     */
+    private long tarLength;
+
+    /**
+     *
+     * @param archiveFile the tar.gz file
+     * @param rootDir the name of the tar's root dir
+     * @param filePermissionResolver the resolver of the entries unix modes
+     * @param parallelism the max number of entries compressed concurrently
+     * @throws IOException
+     */
+    TarGzOutputSink(File archiveFile, String rootDir, FilePermissionResolver filePermissionResolver, int parallelism) throws IOException {
+        super(archiveFile, rootDir, filePermissionResolver, parallelism);
+    }
+
+    @Override
+    protected Member prepareEntry(String name, boolean directory, int mode, EntrySource source, Spool spool) throws IOException {
+        final long length = source.getSize();
+        if (length > MAX_SIZE) {
+            throw new IOException("Tar entry " + name + " is too large");
+        }
+        final ByteArrayOutputStream headers = new ByteArrayOutputStream(3 * BLOCK_SIZE);
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final int prefixEnd = splitName(nameBytes);
+        final byte[] header;
+        if (prefixEnd == -2) {
+            // the name does not fit in the header, it is set by a pax extended header
+            final byte[] paxData = paxRecord("path", name);
+            writeBlocks(header(PAX_HEADER_NAME, new byte[0], 'x', 0644, paxData.length), paxData, paxData.length, headers);
+            header = header(truncate(nameBytes, 100), new byte[0], directory ? '5' : '0', mode, length);
+        } else if (prefixEnd == -1) {
+            header = header(nameBytes, new byte[0], directory ? '5' : '0', mode, length);
+        } else {
+            final byte[] prefix = new byte[prefixEnd];
+            System.arraycopy(nameBytes, 0, prefix, 0, prefixEnd);
+            final byte[] suffix = new byte[nameBytes.length - prefixEnd - 1];
+            System.arraycopy(nameBytes, prefixEnd + 1, suffix, 0, suffix.length);
+            header = header(suffix, prefix, directory ? '5' : '0', mode, length);
+        }
+        headers.write(header, 0, header.length);
+        return new Member(name, writeGzipMember(headers.toByteArray(), source, spool, spool.getDeflater()));
+    }
+
+    /**
+     *
+     * @return -1 if the name fits in the header's name field, -2 if it does not fit in the name and prefix fields, otherwise the index of the '/' splitting the name in prefix and name
+     */
+    private static int splitName(byte[] name) {
+        if (name.length <= 100) {
+            return -1;
+        }
+        // the last '/' of a dir name is kept in the name field
+        final int searchEnd = Math.min(155, name[name.length - 1] == '/' ? name.length - 2 : name.length - 1);
+        for (int i = searchEnd; i >= 0; i--) {
+            if (name[i] == '/') {
+                return name.length - i - 1 <= 100 && i > 0 ? i : -2;
+            }
+        }
+        return -2;
+    }
+
+    private static byte[] truncate(byte[] bytes, int length) {
+        if (bytes.length <= length) {
+            return bytes;
+        }
+        final byte[] truncated = new byte[length];
+        System.arraycopy(bytes, 0, truncated, 0, length);
+        return truncated;
+    }
+
+    /**
+     *
+     * @return a pax record, i.e. "length key=value\n", where the length includes itself
+     */
+    private static byte[] paxRecord(String key, String value) {
+        final int length = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int recordLength = length + Integer.toString(length).length();
+        if (Integer.toString(recordLength).length() != Integer.toString(length).length()) {
+            recordLength = length + Integer.toString(recordLength).length();
+        }
+        return (recordLength + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] header(byte[] name, byte[] prefix, char type, int mode, long size) {
+        final byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, name.length);
+        octal(mode, header, 100, 8);
+        octal(0, header, 108, 8);
+        octal(0, header, 116, 8);
+        octal(size, header, 124, 12);
+        octal(getTime() / 1000, header, 136, 12);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        System.arraycopy(prefix, 0, header, 345, prefix.length);
+        // the checksum is computed with its field set to spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(checksum, header, 148, 7);
+        return header;
+    }
+
+    /**
+     * Writes a zero padded, and NUL terminated, octal number.
+     */
+    private static void octal(long value, byte[] header, int offset, int length) {
+        final String octal = Long.toOctalString(value);
+        final int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            final int octalIndex = octal.length() - digits + i;
+            header[offset + i] = (byte) (octalIndex >= 0 ? octal.charAt(octalIndex) : '0');
+        }
+        header[offset + digits] = 0;
+    }
+
+    private static void writeBlocks(byte[] header, byte[] data, int length, ByteArrayOutputStream tar) {
+        tar.write(header, 0, header.length);
+        tar.write(data, 0, length);
+        final int padding = (BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE;
+        tar.write(new byte[padding], 0, padding);
+    }
+
+    /**
+     * Writes a gzip member, with tar blocks, i.e. header blocks, then data padded to a full block.
+     *
+     * @return the length of the tar blocks
+     */
+    private static long writeGzipMember(byte[] headerBlocks, EntrySource data, OutputStream out, Deflater deflater) throws IOException {
+        out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        try (DeflatingOutputStream tar = new DeflatingOutputStream(out, deflater)) {
+            tar.write(headerBlocks, 0, headerBlocks.length);
+            copy(data, tar);
+            final int padding = (int) ((BLOCK_SIZE - data.getSize() % BLOCK_SIZE) % BLOCK_SIZE);
+            tar.write(new byte[padding], 0, padding);
+            tar.finish();
+            final ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) tar.getCrc());
+            // the length modulo 2^32
+            trailer.putInt((int) tar.getLength());
+            out.write(trailer.array(), 0, trailer.position());
+            return tar.getLength();
+        }
+    }
+
+    @Override
+    protected void writeEntry(Member member) throws IOException {
+        writeData(member);
+        tarLength += member.tarLength;
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        // the end of archive is two empty blocks, and the tar is padded to a full record
+        long length = tarLength + 2 * BLOCK_SIZE;
+        length += (RECORD_SIZE - length % RECORD_SIZE) % RECORD_SIZE;
+        final ByteArrayOutputStream member = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            writeGzipMember(new byte[(int) (length - tarLength)], EntrySource.of(new byte[0], 0), member, deflater);
+        } finally {
+            deflater.end();
+        }
+        write(member.toByteArray(), 0, member.size());
+    }
+
+    /**
+     * A gzip member, with the tar blocks of an entry.
+     */
+    static class Member extends PreparedEntry {
+
+        private final long tarLength;
+
+        private Member(String name, long tarLength) {
+            super(name);
+            this.tarLength = tarLength;
+        }
+    }
+}
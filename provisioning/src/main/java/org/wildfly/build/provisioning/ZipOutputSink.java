@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.provisioning;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An output sink which writes a zip file. {@link java.util.zip.ZipOutputStream} can't write entries compressed
+ * beforehand, nor unix modes, so the zip format is written here: each entry has its unix mode in the external attributes
+ * of the central directory, UTF-8 names, and Zip64 extra fields where needed.
+ */
+class ZipOutputSink extends ArchiveOutputSink<ZipOutputSink.Entry> {
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    /**
+     * the version made by, upper byte, tells the external attributes are unix ones
+     */
+    private static final int UNIX_PLATFORM = 3 << 8;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int UNIX_FILE = 0100000;
+    private static final int UNIX_DIR = 040000;
+    private static final int MSDOS_DIR = 0x10;
+
+    private final int dosTime;
+
+    /**
+     * the entries in the central directory, in the order these were written
+     */
+    private final List<CentralDirectoryEntry> centralDirectory = new ArrayList<>();
+
+    /**
+     *
+     * @param archiveFile the zip file
+     * @param rootDir the name of the zip's root dir
+     * @param filePermissionResolver the resolver of the entries unix modes
+     * @param parallelism the max number of entries compressed concurrently
+     * @throws IOException
+     */
+    ZipOutputSink(File archiveFile, String rootDir, FilePermissionResolver filePermissionResolver, int parallelism) throws IOException {
+        super(archiveFile, rootDir, filePermissionResolver, parallelism);
+        this.dosTime = toDosTime(getTime());
+    }
+
+    private static int toDosTime(long time) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        final int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    @Override
+    protected Entry prepareEntry(String name, boolean directory, int mode, EntrySource source, Spool spool) throws IOException {
+        final long size = source.getSize();
+        if (size > 0) {
+            try (DeflatingOutputStream compressed = new DeflatingOutputStream(spool, spool.getDeflater())) {
+                copy(source, compressed);
+                compressed.finish();
+                if (spool.getCount() < size) {
+                    return new Entry(name, directory, mode, DEFLATED, compressed.getCrc(), size);
+                }
+            }
+            // data which does not compress, e.g. a jar, is stored
+            spool.reset();
+        }
+        final CRC32 crc = new CRC32();
+        copy(source, new CheckedOutputStream(spool, crc));
+        return new Entry(name, directory, mode, STORED, crc.getValue(), size);
+    }
+
+    @Override
+    protected void writeEntry(Entry entry) throws IOException {
+        final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        final boolean zip64 = entry.size >= ZIP64_MAGIC || entry.dataLength >= ZIP64_MAGIC;
+        final ByteBuffer header = newBuffer(30 + name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt(dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.dataLength));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_FIELD);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.dataLength);
+        }
+        final long offset = getPosition();
+        write(header.array(), 0, header.position());
+        writeData(entry);
+        centralDirectory.add(new CentralDirectoryEntry(entry, name, offset));
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        final long centralDirectoryOffset = getPosition();
+        for (CentralDirectoryEntry entry : centralDirectory) {
+            final boolean zip64Size = entry.size >= ZIP64_MAGIC;
+            final boolean zip64CompressedSize = entry.compressedSize >= ZIP64_MAGIC;
+            final boolean zip64Offset = entry.offset >= ZIP64_MAGIC;
+            final int extraLength = (zip64Size || zip64CompressedSize || zip64Offset) ? 4 + (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0) : 0;
+            final ByteBuffer header = newBuffer(46 + entry.name.length + extraLength);
+            header.putInt(CENTRAL_FILE_HEADER_SIGNATURE);
+            header.putShort((short) (UNIX_PLATFORM | (extraLength > 0 ? ZIP64_VERSION : VERSION)));
+            header.putShort((short) (extraLength > 0 ? ZIP64_VERSION : VERSION));
+            header.putShort((short) UTF8_FLAG);
+            header.putShort((short) entry.method);
+            header.putInt(dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize));
+            header.putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size));
+            header.putShort((short) entry.name.length);
+            header.putShort((short) extraLength);
+            // comment length, disk number start, internal attributes
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            final int unixMode = (entry.directory ? UNIX_DIR : UNIX_FILE) | entry.mode;
+            header.putInt(unixMode << 16 | (entry.directory ? MSDOS_DIR : 0));
+            header.putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.offset));
+            header.put(entry.name);
+            if (extraLength > 0) {
+                header.putShort((short) ZIP64_EXTRA_FIELD);
+                header.putShort((short) (extraLength - 4));
+                if (zip64Size) {
+                    header.putLong(entry.size);
+                }
+                if (zip64CompressedSize) {
+                    header.putLong(entry.compressedSize);
+                }
+                if (zip64Offset) {
+                    header.putLong(entry.offset);
+                }
+            }
+            write(header.array(), 0, header.position());
+        }
+        final long centralDirectoryEnd = getPosition();
+        final long centralDirectorySize = centralDirectoryEnd - centralDirectoryOffset;
+        final int entries = centralDirectory.size();
+        final boolean zip64 = entries >= ZIP64_MAGIC_COUNT || centralDirectorySize >= ZIP64_MAGIC || centralDirectoryOffset >= ZIP64_MAGIC;
+        if (zip64) {
+            final ByteBuffer end = newBuffer(56 + 20);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putLong(44);
+            end.putShort((short) (UNIX_PLATFORM | ZIP64_VERSION));
+            end.putShort((short) ZIP64_VERSION);
+            // this disk, central directory disk
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(entries);
+            end.putLong(entries);
+            end.putLong(centralDirectorySize);
+            end.putLong(centralDirectoryOffset);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+            end.putInt(0);
+            end.putLong(centralDirectoryEnd);
+            end.putInt(1);
+            write(end.array(), 0, end.position());
+        }
+        final ByteBuffer end = newBuffer(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : entries));
+        end.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : entries));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : centralDirectorySize));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : centralDirectoryOffset));
+        end.putShort((short) 0);
+        write(end.array(), 0, end.position());
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * A zip entry, with its data compressed.
+     */
+    static class Entry extends PreparedEntry {
+
+        private final boolean directory;
+        private final int mode;
+        private final int method;
+        private final long crc;
+        private final long size;
+
+        private Entry(String name, boolean directory, int mode, int method, long crc, long size) {
+            super(name);
+            this.directory = directory;
+            this.mode = mode;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A zip entry written, without its data.
+     */
+    private static class CentralDirectoryEntry {
+
+        private final byte[] name;
+        private final boolean directory;
+        private final int mode;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        private final long offset;
+
+        private CentralDirectoryEntry(Entry entry, byte[] name, long offset) {
+            this.name = name;
+            this.directory = entry.directory;
+            this.mode = entry.mode;
+            this.method = entry.method;
+            this.crc = entry.crc;
+            this.size = entry.size;
+            this.compressedSize = entry.dataLength;
+            this.offset = offset;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package org.wildfly.build.provisioning.model;
 
-import org.wildfly.build.util.xml.ParsingUtils;
+import org.wildfly.build.util.WildcardMatcher;
 
-import java.util.regex.Pattern;
+import java.util.Collections;
 
 /**
  * @author Stuart Douglas
@@ -11,7 +11,7 @@ import java.util.regex.Pattern;
 public class ModuleFilter {
 
     private final String patternString;
-    private final Pattern pattern;
+    private final WildcardMatcher matcher;
     private final boolean include;
     private final boolean transitive;
 
@@ -20,7 +20,7 @@ public class ModuleFilter {
             throw new IllegalArgumentException("null pattern");
         }
         this.patternString = pattern;
-        this.pattern = Pattern.compile(ParsingUtils.wildcardToJavaRegexp(pattern));
+        this.matcher = new WildcardMatcher(Collections.singletonList(pattern));
         this.include = include;
         this.transitive = transitive;
     }
@@ -29,7 +29,7 @@ public class ModuleFilter {
      * Returns true if the file matches the regular expression
      */
     public boolean matches(final String filePath) {
-        return pattern.matcher(filePath).matches();
+        return matcher.matches(filePath);
     }
 
     public boolean isInclude() {
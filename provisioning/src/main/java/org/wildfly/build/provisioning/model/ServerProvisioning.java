@@ -17,6 +17,7 @@
 package org.wildfly.build.provisioning.model;
 
 import org.wildfly.build.configassembly.SubsystemConfig;
+import org.wildfly.build.util.ArchiveRegistry;
 import org.wildfly.build.util.InputStreamSource;
 import org.wildfly.build.util.ZipFileSubsystemInputStreamSources;
 
@@ -41,14 +42,24 @@ public class ServerProvisioning {
     /**
      * the provisioning config
      */
-    private final Config config = new Config();
+    private final Config config;
 
     /**
      *
      * @param description
      */
     public ServerProvisioning(ServerProvisioningDescription description) {
+        this(description, new ArchiveRegistry(0));
+    }
+
+    /**
+     *
+     * @param description
+     * @param archiveRegistry the registry used to open the subsystem templates zip files
+     */
+    public ServerProvisioning(ServerProvisioningDescription description, ArchiveRegistry archiveRegistry) {
         this.description = description;
+        this.config = new Config(archiveRegistry);
     }
 
     /**
@@ -80,11 +91,19 @@ public class ServerProvisioning {
      */
     public static class Config {
 
-        private final ZipFileSubsystemInputStreamSources inputStreamSources = new ZipFileSubsystemInputStreamSources();
+        private final ZipFileSubsystemInputStreamSources inputStreamSources;
         private final Map<String, ConfigFile> standaloneConfigFiles = new HashMap<>();
         private final Map<String, ConfigFile> domainConfigFiles = new HashMap<>();
         private final Map<String, ConfigFile> hostConfigFiles = new HashMap<>();
 
+        public Config() {
+            this(new ArchiveRegistry(0));
+        }
+
+        public Config(ArchiveRegistry archiveRegistry) {
+            this.inputStreamSources = new ZipFileSubsystemInputStreamSources(archiveRegistry);
+        }
+
         public Map<String, ConfigFile> getStandaloneConfigFiles() {
             return standaloneConfigFiles;
         }
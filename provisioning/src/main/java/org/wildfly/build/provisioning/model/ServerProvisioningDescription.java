@@ -20,6 +20,7 @@ import org.wildfly.build.common.model.ConfigOverride;
 import org.wildfly.build.common.model.CopyArtifact;
 import org.wildfly.build.common.model.FileFilter;
 import org.wildfly.build.pack.model.Artifact;
+import org.wildfly.build.util.WildcardFilterList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -212,7 +213,12 @@ public class ServerProvisioningDescription {
          */
         public static class ModuleFilters {
 
-            private final List<ModuleFilter> filters = new ArrayList<>();
+            private final WildcardFilterList<ModuleFilter> filters = new WildcardFilterList<ModuleFilter>() {
+                @Override
+                protected String getPattern(ModuleFilter filter) {
+                    return filter.getPattern();
+                }
+            };
             private final boolean include;
 
             public ModuleFilters(boolean include) {
@@ -234,6 +240,15 @@ public class ServerProvisioningDescription {
             public boolean isInclude() {
                 return include;
             }
+
+            /**
+             *
+             * @param moduleFile the module file, relative to the modules dir
+             * @return the first filter matching the module file, null if none matches
+             */
+            public ModuleFilter getFilter(String moduleFile) {
+                return filters.getFirstMatch(moduleFile);
+            }
         }
 
         /**
@@ -241,7 +256,20 @@ public class ServerProvisioningDescription {
          */
         public static class ContentFilters {
 
-            private final List<FileFilter> filters = new ArrayList<>();
+            /**
+             * the filters, matching the exclude filters only
+             */
+            private final WildcardFilterList<FileFilter> filters = new WildcardFilterList<FileFilter>() {
+                @Override
+                protected String getPattern(FileFilter filter) {
+                    return filter.getPattern();
+                }
+
+                @Override
+                protected boolean isMatched(FileFilter filter) {
+                    return !filter.isInclude();
+                }
+            };
             private final boolean include;
 
             public ContentFilters(boolean include) {
@@ -263,6 +291,15 @@ public class ServerProvisioningDescription {
             public boolean isInclude() {
                 return include;
             }
+
+            /**
+             *
+             * @param contentFile the content file, relative to the content dir
+             * @return true if any exclude filter matches the content file
+             */
+            public boolean isExcluded(String contentFile) {
+                return filters.getFirstMatch(contentFile) != null;
+            }
         }
 
         /**
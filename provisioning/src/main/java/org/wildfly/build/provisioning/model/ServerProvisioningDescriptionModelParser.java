@@ -18,9 +18,9 @@ package org.wildfly.build.provisioning.model;
 
 import org.jboss.staxmapper.XMLMapper;
 import org.wildfly.build.util.PropertyResolver;
+import org.wildfly.build.util.xml.XMLFactories;
 
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.InputStream;
@@ -34,8 +34,6 @@ public class ServerProvisioningDescriptionModelParser {
     private static final QName ROOT_1_1 = new QName(ServerProvisioningDescriptionModelParser11.NAMESPACE_1_1, Element.SERVER_PROVISIONING.getLocalName());
     private static final QName ROOT_1_2 = new QName(ServerProvisioningDescriptionModelParser12.NAMESPACE_1_2, Element.SERVER_PROVISIONING.getLocalName());
 
-    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
-
     private final XMLMapper mapper;
 
     public ServerProvisioningDescriptionModelParser(PropertyResolver properties) {
@@ -47,19 +45,10 @@ public class ServerProvisioningDescriptionModelParser {
 
     public ServerProvisioningDescription parse(final InputStream input) throws XMLStreamException {
 
-        final XMLInputFactory inputFactory = INPUT_FACTORY;
-        setIfSupported(inputFactory, XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
-        setIfSupported(inputFactory, XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
-        final XMLStreamReader streamReader = inputFactory.createXMLStreamReader(input);
+        final XMLStreamReader streamReader = XMLFactories.getNonValidatingInputFactory().createXMLStreamReader(input);
         ServerProvisioningDescription serverProvisioningDescription = new ServerProvisioningDescription();
         mapper.parseDocument(serverProvisioningDescription, streamReader);
         return serverProvisioningDescription;
     }
 
-    private void setIfSupported(final XMLInputFactory inputFactory, final String property, final Object value) {
-        if (inputFactory.isPropertySupported(property)) {
-            inputFactory.setProperty(property, value);
-        }
-    }
-
 }
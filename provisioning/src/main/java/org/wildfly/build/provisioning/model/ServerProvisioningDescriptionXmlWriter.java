@@ -28,9 +28,10 @@ import org.wildfly.build.configassembly.SubsystemConfig;
 import org.wildfly.build.pack.model.Artifact;
 import org.wildfly.build.util.xml.AttributeValue;
 import org.wildfly.build.util.xml.ElementNode;
+import org.wildfly.build.util.xml.FormattingXMLStreamWriter;
 import org.wildfly.build.util.xml.TextNode;
+import org.wildfly.build.util.xml.XMLFactories;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
@@ -56,20 +57,24 @@ public class ServerProvisioningDescriptionXmlWriter implements XMLElementWriter<
 
     public void writeContent(File file, ServerProvisioningDescription value) throws XMLStreamException, IOException {
         try (FileOutputStream out = new FileOutputStream(file)) {
-            final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
-            try {
-                writeContent(writer, value);
-            } finally {
-                try {
-                    writer.close();
-                } catch (Exception ignore) {
-                }
-            }
+            final XMLStreamWriter writer = new FormattingXMLStreamWriter(XMLFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8"));
+            writer.writeStartDocument("UTF-8", "1.0");
+            createRootElementNode(value).marshall(writer);
+            writer.writeEndDocument();
+            writer.close();
         }
     }
 
     @Override
     public void writeContent(XMLExtendedStreamWriter streamWriter, ServerProvisioningDescription description) throws XMLStreamException {
+        final ElementNode rootElementNode = createRootElementNode(description);
+        // write the xml
+        streamWriter.writeStartDocument();
+        rootElementNode.marshall(streamWriter);
+        streamWriter.writeEndDocument();
+    }
+
+    private ElementNode createRootElementNode(ServerProvisioningDescription description) {
         // build node tree
         final ElementNode rootElementNode = new ElementNode(null, Element.SERVER_PROVISIONING.getLocalName(), ServerProvisioningDescriptionModelParser11.NAMESPACE_1_1);
         if (description.isCopyModuleArtifacts()) {
@@ -83,10 +88,7 @@ public class ServerProvisioningDescriptionXmlWriter implements XMLElementWriter<
         processFeaturePacks(description.getFeaturePacks(), rootElementNode);
         processVersionOverrides(description.getVersionOverrides(), rootElementNode);
         CopyArtifactsXMLWriter10.INSTANCE.write(description.getCopyArtifacts(), rootElementNode);
-        // write the xml
-        streamWriter.writeStartDocument();
-        rootElementNode.marshall(streamWriter);
-        streamWriter.writeEndDocument();
+        return rootElementNode;
     }
 
     protected void processFeaturePacks(List<ServerProvisioningDescription.FeaturePack> featurePacks, ElementNode parentElementNode) {
@@ -7,12 +7,14 @@ import org.wildfly.build.common.model.ConfigOverride;
 import org.wildfly.build.configassembly.SubsystemConfig;
 import org.wildfly.build.pack.model.FeaturePack;
 import org.wildfly.build.pack.model.ModuleIdentifier;
+import org.wildfly.build.util.ArchiveRegistry;
 import org.wildfly.build.util.ZipFileSubsystemInputStreamSources;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -55,6 +57,12 @@ public class ServerProvisioningFeaturePack {
      */
     private final ArtifactFileResolver artifactFileResolver;
 
+    /**
+     * the modules to include, computed once, without and with the feature pack dependencies modules
+     */
+    private Map<ModuleIdentifier, FeaturePack.Module> modules;
+    private Map<ModuleIdentifier, FeaturePack.Module> modulesExcludingDependencies;
+
     /**
      *
      * @param description
@@ -96,9 +104,25 @@ public class ServerProvisioningFeaturePack {
      * 2) no module filtering + config/subsystems filtering --> only the specified config's subsystems, and dependencies
      * 3) no module filtering + no config filtering --> all modules
      *
+     * The modules are computed once for each value of excludeDependencies, and then reused.
+     *
      * @return
      */
-    public Map<ModuleIdentifier, FeaturePack.Module> getModules(ArtifactFileResolver artifactFileResolver, boolean excludeDependencies) throws IOException, XMLStreamException {
+    public synchronized Map<ModuleIdentifier, FeaturePack.Module> getModules(ArtifactFileResolver artifactFileResolver, boolean excludeDependencies) throws IOException, XMLStreamException {
+        if (excludeDependencies) {
+            if (modulesExcludingDependencies == null) {
+                modulesExcludingDependencies = Collections.unmodifiableMap(computeModules(artifactFileResolver, true));
+            }
+            return modulesExcludingDependencies;
+        } else {
+            if (modules == null) {
+                modules = Collections.unmodifiableMap(computeModules(artifactFileResolver, false));
+            }
+            return modules;
+        }
+    }
+
+    private Map<ModuleIdentifier, FeaturePack.Module> computeModules(ArtifactFileResolver artifactFileResolver, boolean excludeDependencies) throws IOException, XMLStreamException {
         ServerProvisioningDescription.FeaturePack.ModuleFilters moduleFilters = description.getModuleFilters();
         final Map<ModuleIdentifier, FeaturePack.Module> includedModules = new HashMap<>();
         if (moduleFilters == null) {
@@ -152,17 +176,14 @@ public class ServerProvisioningFeaturePack {
                 boolean include = moduleFilters.isInclude();
                 // by default module's dependencies are included
                 boolean transitive = true;
-                for (ModuleFilter moduleFilter : moduleFilters.getFilters()) {
-                    String moduleFile = module.getModuleFile().substring(Locations.MODULES.length() + 1);
-                    if (moduleFilter.matches(moduleFile)) {
-                        if (moduleFilter.isInclude()) {
-                            if (!moduleFilter.isTransitive()) {
-                                transitive = false;
-                            }
-                        } else {
-                            include = false;
+                final ModuleFilter moduleFilter = moduleFilters.getFilter(module.getModuleFile().substring(Locations.MODULES.length() + 1));
+                if (moduleFilter != null) {
+                    if (moduleFilter.isInclude()) {
+                        if (!moduleFilter.isTransitive()) {
+                            transitive = false;
                         }
-                        break;
+                    } else {
+                        include = false;
                     }
                 }
                 if (include) {
@@ -216,7 +237,7 @@ public class ServerProvisioningFeaturePack {
                 // subsystems defined in description, transform into config override
                 configOverride = new ConfigOverride();
                 // 1. collect all subsystem templates from each subsystem module
-                ZipFileSubsystemInputStreamSources subsystemInputStreamSources = new ZipFileSubsystemInputStreamSources();
+                ZipFileSubsystemInputStreamSources subsystemInputStreamSources = new ZipFileSubsystemInputStreamSources(featurePack.getArchiveRegistry());
                 for (ServerProvisioningDescription.FeaturePack.Subsystem subsystem : subsystems) {
                     final String subsystemName = subsystem.getName().endsWith(".xml") ? subsystem.getName() : subsystem.getName() + ".xml";
                     FeaturePack.Module module = featurePack.getSubsystemModule(subsystemName, artifactFileResolver);
@@ -230,9 +251,9 @@ public class ServerProvisioningFeaturePack {
                     }
                 }
                 // 2. create config file override for each feature pack config file
-                createConfigFileOverridesFromSubsystems(featurePack.getFeaturePackFile(), featurePack.getDescription().getConfig().getStandaloneConfigFiles(), subsystemInputStreamSources, configOverride.getStandaloneConfigFiles());
-                createConfigFileOverridesFromSubsystems(featurePack.getFeaturePackFile(), featurePack.getDescription().getConfig().getDomainConfigFiles(), subsystemInputStreamSources, configOverride.getDomainConfigFiles());
-                createConfigFileOverridesFromSubsystems(featurePack.getFeaturePackFile(), featurePack.getDescription().getConfig().getHostConfigFiles(), subsystemInputStreamSources, configOverride.getHostConfigFiles());
+                createConfigFileOverridesFromSubsystems(featurePack, featurePack.getDescription().getConfig().getStandaloneConfigFiles(), subsystemInputStreamSources, configOverride.getStandaloneConfigFiles());
+                createConfigFileOverridesFromSubsystems(featurePack, featurePack.getDescription().getConfig().getDomainConfigFiles(), subsystemInputStreamSources, configOverride.getDomainConfigFiles());
+                createConfigFileOverridesFromSubsystems(featurePack, featurePack.getDescription().getConfig().getHostConfigFiles(), subsystemInputStreamSources, configOverride.getHostConfigFiles());
             }
         }
         return configOverride;
@@ -240,17 +261,17 @@ public class ServerProvisioningFeaturePack {
 
     /**
      * Creates a {@link org.wildfly.build.common.model.ConfigFileOverride} for each {@link org.wildfly.build.common.model.ConfigFile} provided, including only the subsystems in the specified {@link org.wildfly.build.util.ZipFileSubsystemInputStreamSources}.
-     * @param featurePackFile
+     * @param featurePack
      * @param configFiles
      * @param subsystemInputStreamSources
      * @param configFileOverrides
      * @throws IOException
      * @throws XMLStreamException
      */
-    private static void createConfigFileOverridesFromSubsystems(File featurePackFile, List<org.wildfly.build.common.model.ConfigFile> configFiles, ZipFileSubsystemInputStreamSources subsystemInputStreamSources, Map<String, ConfigFileOverride> configFileOverrides) throws IOException, XMLStreamException {
+    private static void createConfigFileOverridesFromSubsystems(FeaturePack featurePack, List<org.wildfly.build.common.model.ConfigFile> configFiles, ZipFileSubsystemInputStreamSources subsystemInputStreamSources, Map<String, ConfigFileOverride> configFileOverrides) throws IOException, XMLStreamException {
         for (org.wildfly.build.common.model.ConfigFile configFile : configFiles) {
             // parse subsystems
-            Map<String, Map<String, SubsystemConfig>> subsystems = configFile.getSubsystemConfigs(featurePackFile);
+            Map<String, Map<String, SubsystemConfig>> subsystems = configFile.getSubsystemConfigs(featurePack.getFeaturePackFile(), featurePack.getArchiveRegistry());
             // remove the subsystems which templates were not found in the subsystem modules
             Iterator<Map<String, SubsystemConfig>> subsystemsIterator = subsystems.values().iterator();
             while (subsystemsIterator.hasNext()) {
@@ -283,7 +304,7 @@ public class ServerProvisioningFeaturePack {
     private static List<ConfigFile> createStandaloneConfigFiles(FeaturePack featurePack, ConfigOverride configOverride) {
         final List<org.wildfly.build.common.model.ConfigFile> configFiles = featurePack.getDescription().getConfig().getStandaloneConfigFiles();
         final Map<String, ConfigFileOverride> configFileOverrides = configOverride != null ? configOverride.getStandaloneConfigFiles() : null;
-        return createConfigFiles(featurePack.getFeaturePackFile(), configFiles, configOverride, configFileOverrides);
+        return createConfigFiles(featurePack, configFiles, configOverride, configFileOverrides);
     }
 
 
@@ -296,7 +317,7 @@ public class ServerProvisioningFeaturePack {
     private static List<ConfigFile> createHostConfigFiles(FeaturePack featurePack, ConfigOverride configOverride) {
         final List<org.wildfly.build.common.model.ConfigFile> configFiles = featurePack.getDescription().getConfig().getHostConfigFiles();
         final Map<String, ConfigFileOverride> configFileOverrides = configOverride != null ? configOverride.getHostConfigFiles() : null;
-        return createConfigFiles(featurePack.getFeaturePackFile(), configFiles, configOverride, configFileOverrides);
+        return createConfigFiles(featurePack, configFiles, configOverride, configFileOverrides);
     }
 
     /**
@@ -308,31 +329,31 @@ public class ServerProvisioningFeaturePack {
     private static List<ConfigFile> createDomainConfigFiles(FeaturePack featurePack, ConfigOverride configOverride) {
         final List<org.wildfly.build.common.model.ConfigFile> configFiles = featurePack.getDescription().getConfig().getDomainConfigFiles();
         final Map<String, ConfigFileOverride> configFileOverrides = configOverride != null ? configOverride.getDomainConfigFiles() : null;
-        return createConfigFiles(featurePack.getFeaturePackFile(), configFiles, configOverride, configFileOverrides);
+        return createConfigFiles(featurePack, configFiles, configOverride, configFileOverrides);
     }
 
     /**
      * Creates a provisioning config file for each {@link org.wildfly.build.common.model.ConfigFile} provided.
-     * @param featurePackFile
+     * @param featurePack
      * @param configFiles
      * @param configOverride
      * @param configFileOverrides
      * @return
      */
-    private static List<ConfigFile> createConfigFiles(File featurePackFile, List<org.wildfly.build.common.model.ConfigFile> configFiles, ConfigOverride configOverride, Map<String, ConfigFileOverride> configFileOverrides) {
+    private static List<ConfigFile> createConfigFiles(FeaturePack featurePack, List<org.wildfly.build.common.model.ConfigFile> configFiles, ConfigOverride configOverride, Map<String, ConfigFileOverride> configFileOverrides) {
         final List<ConfigFile> result = new ArrayList<>();
         if (configOverride != null) {
             if (configFileOverrides != null && !configFileOverrides.isEmpty()) {
                 for (org.wildfly.build.common.model.ConfigFile featurePackConfigFile : configFiles) {
                     ConfigFileOverride configFileOverride = configFileOverrides.get(featurePackConfigFile.getOutputFile());
                     if (configFileOverride != null) {
-                        result.add(new ConfigFile(featurePackFile, featurePackConfigFile, configFileOverride));
+                        result.add(new ConfigFile(featurePack.getFeaturePackFile(), featurePackConfigFile, configFileOverride, featurePack.getArchiveRegistry()));
                     }
                 }
             }
         } else {
             for (org.wildfly.build.common.model.ConfigFile featurePackConfigFile : configFiles) {
-                result.add(new ConfigFile(featurePackFile, featurePackConfigFile, null));
+                result.add(new ConfigFile(featurePack.getFeaturePackFile(), featurePackConfigFile, null, featurePack.getArchiveRegistry()));
             }
         }
         return result;
@@ -346,13 +367,14 @@ public class ServerProvisioningFeaturePack {
         private final File featurePackFile;
         private final org.wildfly.build.common.model.ConfigFile featurePackConfigFile;
         private final ConfigFileOverride configFileOverride;
+        private final ArchiveRegistry archiveRegistry;
         private Map<String, Map<String, SubsystemConfig>> subsystems;
 
         public synchronized Map<String, Map<String, SubsystemConfig>> getSubsystems() throws IOException, XMLStreamException {
             if (subsystems == null) {
                 if (configFileOverride == null || configFileOverride.getSubsystems() == null) {
                     // parse the feature pack's config subsystems file and include all
-                    subsystems = featurePackConfigFile.getSubsystemConfigs(featurePackFile);
+                    subsystems = featurePackConfigFile.getSubsystemConfigs(featurePackFile, archiveRegistry);
                 } else {
                     subsystems = configFileOverride.getSubsystems();
                 }
@@ -361,9 +383,14 @@ public class ServerProvisioningFeaturePack {
         }
 
         public ConfigFile(File featurePackFile, org.wildfly.build.common.model.ConfigFile featurePackConfigFile, ConfigFileOverride configFileOverride) {
+            this(featurePackFile, featurePackConfigFile, configFileOverride, new ArchiveRegistry(0));
+        }
+
+        public ConfigFile(File featurePackFile, org.wildfly.build.common.model.ConfigFile featurePackConfigFile, ConfigFileOverride configFileOverride, ArchiveRegistry archiveRegistry) {
             this.featurePackFile = featurePackFile;
             this.featurePackConfigFile = featurePackConfigFile;
             this.configFileOverride = configFileOverride;
+            this.archiveRegistry = archiveRegistry;
         }
 
         public org.wildfly.build.common.model.ConfigFile getFeaturePackConfigFile() {
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the subsystem template and schema entries of archives, which avoids opening archives known to have none.
+ * <p>
+ * Each archive is indexed by its path, and its index entry is only valid while the archive's size and last modified time
+ * do not change. An index loaded from a file may be stored back, to be shared by later provisionings on the same machine.
+ * <p>
+ * This class is thread safe.
+ */
+public class ArchiveEntryIndex {
+
+    private static final Logger logger = Logger.getLogger(ArchiveEntryIndex.class);
+
+    public static final String SUBSYSTEM_TEMPLATES_DIR = "subsystem-templates/";
+
+    public static final String SCHEMA_DIR = "schema/";
+
+    /**
+     * the system property which overrides the location of the default index file
+     */
+    public static final String INDEX_FILE_PROPERTY = "wildfly.build.archive-entry-index";
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * the index file, null if the index is not persisted
+     */
+    private final File indexFile;
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean modified;
+
+    /**
+     * Creates an index which is not persisted.
+     */
+    public ArchiveEntryIndex() {
+        this(null);
+    }
+
+    private ArchiveEntryIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     *
+     * @return the default index file, in the user's home dir unless overridden by the {@link #INDEX_FILE_PROPERTY} system property
+     */
+    public static File getDefaultIndexFile() {
+        final String indexFile = System.getProperty(INDEX_FILE_PROPERTY);
+        if (indexFile != null) {
+            return new File(indexFile);
+        }
+        return new File(new File(System.getProperty("user.home"), ".wildfly-build"), "archive-entry-index.properties");
+    }
+
+    /**
+     * Loads the index from the specified file. A missing or unreadable file results in an empty index.
+     *
+     * @param indexFile the index file
+     * @return the index
+     */
+    public static ArchiveEntryIndex load(File indexFile) {
+        final ArchiveEntryIndex index = new ArchiveEntryIndex(indexFile);
+        index.entries.putAll(read(indexFile));
+        return index;
+    }
+
+    private static Map<String, String> read(File indexFile) {
+        final Map<String, String> result = new ConcurrentHashMap<>();
+        if (indexFile.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+                properties.load(in);
+                for (String path : properties.stringPropertyNames()) {
+                    result.put(path, properties.getProperty(path));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                logger.debugf(e, "Ignoring unreadable archive entry index %s", indexFile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the names of the subsystem template and schema entries of the specified archive. The names of the
+     * {@link #SUBSYSTEM_TEMPLATES_DIR} and {@link #SCHEMA_DIR} dirs are included if the archive contains such dir entries.
+     *
+     * @param file            the archive
+     * @param archiveRegistry the registry used to open the archive, if not indexed yet
+     * @return the archive's entry names
+     * @throws IOException if the archive could not be read
+     */
+    public List<String> getEntries(File file, ArchiveRegistry archiveRegistry) throws IOException {
+        final String path = file.getAbsolutePath();
+        final String key = file.length() + SEPARATOR + file.lastModified();
+        final String value = entries.get(path);
+        if (value != null && (value.equals(key) || value.startsWith(key + SEPARATOR))) {
+            return parse(value.substring(key.length()));
+        }
+        final StringBuilder sb = new StringBuilder(key);
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(file)) {
+            final ZipFile zip = archive.getZipFile();
+            // a dir entry is found with or without the trailing slash
+            final boolean subsystemTemplates = zip.getEntry("subsystem-templates") != null;
+            final boolean schemas = zip.getEntry("schema") != null;
+            if (subsystemTemplates) {
+                sb.append(SEPARATOR).append(SUBSYSTEM_TEMPLATES_DIR);
+            }
+            if (schemas) {
+                sb.append(SEPARATOR).append(SCHEMA_DIR);
+            }
+            final Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                final ZipEntry zipEntry = zipEntries.nextElement();
+                final String name = zipEntry.getName();
+                if (!zipEntry.isDirectory() && (name.startsWith(SUBSYSTEM_TEMPLATES_DIR) || name.startsWith(SCHEMA_DIR))) {
+                    sb.append(SEPARATOR).append(name);
+                }
+            }
+        }
+        final String newValue = sb.toString();
+        entries.put(path, newValue);
+        modified = true;
+        return parse(newValue.substring(key.length()));
+    }
+
+    private static List<String> parse(String value) {
+        if (value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> result = new ArrayList<>();
+        int start = 1;
+        int end;
+        while ((end = value.indexOf(SEPARATOR, start)) != -1) {
+            result.add(value.substring(start, end));
+            start = end + 1;
+        }
+        result.add(value.substring(start));
+        return result;
+    }
+
+    /**
+     * Stores the index, if persisted and modified. The index is merged with the one currently stored, and the entries of
+     * archives which no longer exist are dropped. A failure to store the index is logged and otherwise ignored.
+     */
+    public void store() {
+        if (indexFile == null || !modified) {
+            return;
+        }
+        try {
+            final Map<String, String> merged = read(indexFile);
+            merged.putAll(entries);
+            final Properties properties = new Properties();
+            for (Map.Entry<String, String> entry : merged.entrySet()) {
+                if (new File(entry.getKey()).isFile()) {
+                    properties.setProperty(entry.getKey(), entry.getValue());
+                }
+            }
+            final File dir = indexFile.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create directory " + dir);
+            }
+            // write to a temp file, and then replace the index, so concurrent readers never see a partial index
+            final Path tempFile = Files.createTempFile(dir.toPath(), indexFile.getName(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(tempFile)) {
+                    properties.store(out, "Archive entry index");
+                }
+                try {
+                    Files.move(tempFile, indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            modified = false;
+        } catch (IOException e) {
+            logger.debugf(e, "Failed to store archive entry index %s", indexFile);
+        }
+    }
+}
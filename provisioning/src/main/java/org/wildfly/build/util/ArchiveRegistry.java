@@ -0,0 +1,272 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipFile;
+
+/**
+ * A registry of opened zip archives, which shares a single {@link ZipFile} per archive, and so a single read of the
+ * archive's central directory, between all its users.
+ * <p>
+ * Each {@link #open(File)} must be paired with the {@link Archive#close()} of the returned archive. Archives not in use
+ * are kept open, up to the registry's max number of idle archives, and closed when the registry is closed. A registry
+ * with no idle archives closes each archive as soon as it is no longer in use.
+ * <p>
+ * This class is thread safe.
+ */
+public class ArchiveRegistry implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ArchiveRegistry.class);
+
+    /**
+     * the default max number of idle archives, kept low enough to not exhaust file descriptors
+     */
+    public static final int DEFAULT_MAX_IDLE_ARCHIVES = 256;
+
+    private final int maxIdleArchives;
+
+    private final ArchiveEntryIndex entryIndex;
+
+    /**
+     * the registry entries, in least recently used order
+     */
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int idleArchives;
+
+    private boolean closed;
+
+    /**
+     * Creates a registry with the default max number of idle archives.
+     */
+    public ArchiveRegistry() {
+        this(DEFAULT_MAX_IDLE_ARCHIVES);
+    }
+
+    /**
+     *
+     * @param maxIdleArchives the max number of archives kept open while not in use
+     */
+    public ArchiveRegistry(int maxIdleArchives) {
+        this(maxIdleArchives, new ArchiveEntryIndex());
+    }
+
+    /**
+     *
+     * @param maxIdleArchives the max number of archives kept open while not in use
+     * @param entryIndex the index of the archives subsystem template and schema entries
+     */
+    public ArchiveRegistry(int maxIdleArchives, ArchiveEntryIndex entryIndex) {
+        this.maxIdleArchives = maxIdleArchives;
+        this.entryIndex = entryIndex;
+    }
+
+    /**
+     *
+     * @return the index of the archives subsystem template and schema entries
+     */
+    public ArchiveEntryIndex getEntryIndex() {
+        return entryIndex;
+    }
+
+    /**
+     * Retrieves the names of the subsystem template and schema entries of the specified archive, opening it only if not indexed.
+     * @param file the archive file
+     * @return the entry names, see {@link ArchiveEntryIndex#getEntries(File, ArchiveRegistry)}
+     * @throws IOException if the archive could not be read
+     */
+    public List<String> getIndexedEntries(File file) throws IOException {
+        return entryIndex.getEntries(file, this);
+    }
+
+    /**
+     * Opens the specified archive, or shares the already opened one.
+     * @param file the archive file
+     * @return the archive, which must be closed once no longer needed
+     * @throws IOException if the archive could not be opened
+     */
+    public Archive open(File file) throws IOException {
+        final File key = file.getAbsoluteFile();
+        final Entry entry;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Archive registry is closed");
+            }
+            Entry existing = entries.get(key);
+            if (existing == null) {
+                existing = new Entry(key);
+                entries.put(key, existing);
+            } else if (existing.references == 0) {
+                idleArchives--;
+            }
+            existing.references++;
+            entry = existing;
+        }
+        try {
+            return new Archive(entry, entry.getZipFile());
+        } catch (IOException | RuntimeException e) {
+            release(entry);
+            throw e;
+        }
+    }
+
+    private void release(Entry entry) {
+        final List<Entry> toClose = new ArrayList<>();
+        synchronized (this) {
+            if (--entry.references > 0) {
+                return;
+            }
+            if (closed || entry.zipFile == null) {
+                entries.remove(entry.file);
+                toClose.add(entry);
+            } else {
+                idleArchives++;
+                // close the least recently used idle archives
+                final Iterator<Entry> iterator = entries.values().iterator();
+                while (idleArchives > maxIdleArchives && iterator.hasNext()) {
+                    final Entry idleEntry = iterator.next();
+                    if (idleEntry.references == 0) {
+                        iterator.remove();
+                        idleArchives--;
+                        toClose.add(idleEntry);
+                    }
+                }
+            }
+        }
+        for (Entry idleEntry : toClose) {
+            idleEntry.close();
+        }
+    }
+
+    /**
+     * Closes all idle archives, archives still in use are closed once released.
+     */
+    @Override
+    public void close() {
+        final List<Entry> toClose = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                final Entry entry = iterator.next();
+                if (entry.references == 0) {
+                    iterator.remove();
+                    toClose.add(entry);
+                } else {
+                    logger.debugf("Archive %s still in use while closing the archive registry", entry.file);
+                }
+            }
+            idleArchives = 0;
+        }
+        for (Entry entry : toClose) {
+            entry.close();
+        }
+    }
+
+    private static class Entry {
+
+        private final File file;
+        /**
+         * guarded by the registry
+         */
+        private int references;
+        private volatile ZipFile zipFile;
+
+        private Entry(File file) {
+            this.file = file;
+        }
+
+        private ZipFile getZipFile() throws IOException {
+            ZipFile result = zipFile;
+            if (result == null) {
+                synchronized (this) {
+                    result = zipFile;
+                    if (result == null) {
+                        result = new ZipFile(file);
+                        zipFile = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void close() {
+            final ZipFile result = zipFile;
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (IOException e) {
+                    logger.debugf(e, "Failed to close archive %s", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * An archive opened through the registry.
+     */
+    public class Archive implements Closeable {
+
+        private final Entry entry;
+        private final ZipFile zipFile;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Archive(Entry entry, ZipFile zipFile) {
+            this.entry = entry;
+            this.zipFile = zipFile;
+        }
+
+        /**
+         *
+         * @return the archive's file
+         */
+        public File getFile() {
+            return entry.file;
+        }
+
+        /**
+         *
+         * @return the archive's zip file, which should not be used after the archive is closed
+         */
+        public ZipFile getZipFile() {
+            return zipFile;
+        }
+
+        /**
+         * Releases the archive.
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(entry);
+            }
+        }
+    }
+}
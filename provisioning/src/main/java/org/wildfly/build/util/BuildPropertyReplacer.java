@@ -21,10 +21,19 @@ package org.wildfly.build.util;
  */
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Replace properties of the form:
  * <code>${<i>&lt;[env.]name&gt;[</i>,<i>&lt;[env.]name2&gt;[</i>,<i>&lt;[env.]name3&gt;...]][</i>]</i>}</code>
+ * <p>
+ * A value without a {@code $} is returned as is. Otherwise the value is compiled once into a template, of its literal
+ * and expression segments, which is cached by the replacer, and then evaluated with the replacer's properties.
+ * <p>
+ * This class is thread safe, as long as its property resolver is.
  *
  * @author Jaikiran Pai (copied from JBoss DMR project)
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -32,135 +41,147 @@ import java.io.File;
  */
 public class BuildPropertyReplacer {
 
-    private static final int INITIAL = 0;
-    private static final int GOT_DOLLAR = 1;
-    private static final int GOT_OPEN_BRACE = 2;
-    private static final int RESOLVED = 3;
-    private static final int DEFAULT = 4;
-
     private final PropertyResolver properties;
 
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
     public BuildPropertyReplacer(PropertyResolver properties) {
         this.properties = properties;
     }
 
     public String replaceProperties(final String value) {
-        final StringBuilder builder = new StringBuilder();
-        final int len = value.length();
-        int state = INITIAL;
-        int start = -1;
-        int nameStart = -1;
-        int expressionStart = -1;
-        String resolvedValue = null;
-        for (int i = 0; i < len; i = value.offsetByCodePoints(i, 1)) {
-            final int ch = value.codePointAt(i);
-            switch (state) {
-                case INITIAL: {
-                    switch (ch) {
-                        case '$': {
-                            state = GOT_DOLLAR;
-                            continue;
-                        }
-                        default: {
-                            builder.appendCodePoint(ch);
-                            continue;
-                        }
-                    }
-                    // not reachable
+        if (value.indexOf('$') == -1) {
+            return value;
+        }
+        Template template = templates.get(value);
+        if (template == null) {
+            template = Template.compile(value);
+            templates.putIfAbsent(value, template);
+        }
+        return template.evaluate(properties);
+    }
+
+    /**
+     * A value compiled into the literals and the expressions in between, i.e. {@code literals[i]} precedes
+     * {@code expressions[i]}, and the last literal follows the last expression.
+     */
+    private static class Template {
+
+        private final String[] literals;
+        private final Expression[] expressions;
+
+        private Template(String[] literals, Expression[] expressions) {
+            this.literals = literals;
+            this.expressions = expressions;
+        }
+
+        private static Template compile(String value) {
+            final List<String> literals = new ArrayList<>();
+            final List<Expression> expressions = new ArrayList<>();
+            final StringBuilder literal = new StringBuilder();
+            final int len = value.length();
+            int i = 0;
+            while (i < len) {
+                final char ch = value.charAt(i);
+                if (ch != '$') {
+                    literal.append(ch);
+                    i++;
+                    continue;
                 }
-                case GOT_DOLLAR: {
-                    switch (ch) {
-                        case '$': {
-                            builder.appendCodePoint(ch);
-                            state = INITIAL;
-                            continue;
-                        }
-                        case '{': {
-                            start = i + 1;
-                            expressionStart = nameStart = start;
-                            state = GOT_OPEN_BRACE;
-                            continue;
-                        }
-                        default: {
-                            // invalid; emit and resume
-                            builder.append('$').appendCodePoint(ch);
-                            state = INITIAL;
-                            continue;
-                        }
-                    }
-                    // not reachable
+                if (i + 1 == len) {
+                    // a trailing '$' is emitted
+                    literal.append('$');
+                    break;
                 }
-                case GOT_OPEN_BRACE: {
-                    switch (ch) {
-                        case '}':
-                        case ',': {
-                            final String name = value.substring(nameStart, i).trim();
-                            if ("/".equals(name)) {
-                                builder.append(File.separator);
-                                state = ch == '}' ? INITIAL : RESOLVED;
-                                continue;
-                            }
-                            final String val = properties.resolveProperty(name);
-
-                            if (val != null) {
-                                builder.append(val);
-                                resolvedValue = val;
-                                state = ch == '}' ? INITIAL : RESOLVED;
-                                continue;
-                            } else if (ch == ',') {
-                                nameStart = i + 1;
-                                continue;
-                            } else {
-                                throw new IllegalStateException("Failed to resolve expression: " + value.substring(start - 2, i + 1));
-                            }
-                        }
-                        default: {
-                            continue;
-                        }
-                    }
-                    // not reachable
+                final char next = value.charAt(i + 1);
+                if (next == '$') {
+                    literal.append('$');
+                    i += 2;
+                    continue;
                 }
-                case RESOLVED: {
-                    if (ch == '}') {
-                        state = INITIAL;
-                    }
+                if (next != '{') {
+                    // invalid; emit and resume
+                    literal.append('$').append(next);
+                    i += 2;
                     continue;
                 }
-                case DEFAULT: {
-                    if (ch == '}') {
-                        state = INITIAL;
-                        // JBMETA-371 check in case the whole expression was meant to be resolved
-                        final String val = properties.resolveProperty(value.substring(expressionStart, i));
-                        if (val != null) {
-                            builder.append(val);
-                        } else {
-                            builder.append(value.substring(start, i));
+                // an expression, with the names separated by ',', and terminated by '}' unless the value ends first
+                final List<String> names = new ArrayList<>();
+                int nameStart = i + 2;
+                int end = nameStart;
+                boolean terminated = false;
+                for (; end < len; end++) {
+                    final char c = value.charAt(end);
+                    if (c == '}' || c == ',') {
+                        names.add(value.substring(nameStart, end).trim());
+                        if (c == '}') {
+                            terminated = true;
+                            break;
                         }
+                        nameStart = end + 1;
                     }
-                    continue;
                 }
-                default:
-                    throw new IllegalStateException("Unexpected char seen: " + ch);
+                literals.add(literal.toString());
+                literal.setLength(0);
+                expressions.add(new Expression(terminated ? value.substring(i, end + 1) : value.substring(i), names.toArray(new String[names.size()]), terminated));
+                i = end + 1;
             }
+            literals.add(literal.toString());
+            return new Template(literals.toArray(new String[literals.size()]), expressions.toArray(new Expression[expressions.size()]));
         }
-        switch (state) {
-            case GOT_DOLLAR: {
-                builder.append('$');
-                break;
-            }
-            case DEFAULT: {
-                builder.append(value.substring(start - 2));
-                break;
-            }
-            case GOT_OPEN_BRACE: {
-                // We had a reference that was not resolved, throw ISE
-                if (resolvedValue == null)
-                    throw new IllegalStateException("Incomplete expression: " + builder.toString());
-                break;
+
+        private String evaluate(PropertyResolver properties) {
+            final StringBuilder builder = new StringBuilder();
+            // if any expression was resolved from the properties, an incomplete expression is not a failure
+            boolean resolved = false;
+            for (int i = 0; i < expressions.length; i++) {
+                builder.append(literals[i]);
+                final Expression expression = expressions[i];
+                boolean replaced = false;
+                for (String name : expression.names) {
+                    if ("/".equals(name)) {
+                        builder.append(File.separator);
+                        replaced = true;
+                        break;
+                    }
+                    final String val = properties.resolveProperty(name);
+                    if (val != null) {
+                        builder.append(val);
+                        resolved = true;
+                        replaced = true;
+                        break;
+                    }
+                }
+                if (!replaced) {
+                    if (expression.terminated) {
+                        throw new IllegalStateException("Failed to resolve expression: " + expression.text);
+                    } else if (!resolved) {
+                        // We had a reference that was not resolved, throw ISE
+                        throw new IllegalStateException("Incomplete expression: " + builder.toString());
+                    }
+                }
             }
+            builder.append(literals[expressions.length]);
+            return builder.toString();
         }
-        return builder.toString();
     }
 
-}
+    private static class Expression {
 
+        /**
+         * the expression, from its '$', for error messages
+         */
+        private final String text;
+        /**
+         * the names tried in order, an incomplete expression only has the names followed by a ','
+         */
+        private final String[] names;
+        private final boolean terminated;
+
+        private Expression(String text, String[] names, boolean terminated) {
+            this.text = text;
+            this.names = names;
+            this.terminated = terminated;
+        }
+    }
+}
@@ -33,8 +33,31 @@ public class FileInputStreamSource implements InputStreamSource {
         this.file = file.getAbsoluteFile();
     }
 
+    /**
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
     @Override
     public InputStream getInputStream() throws IOException {
         return new BufferedInputStream(new FileInputStream(file));
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        FileInputStreamSource that = (FileInputStreamSource) o;
+
+        return file.equals(that.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return file.hashCode();
+    }
 }
@@ -16,16 +16,16 @@
 
 package org.wildfly.build.util;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Enumeration;
-import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -34,22 +34,37 @@ import java.util.zip.ZipFile;
  */
 public class FileUtils {
 
-    public static void extractFile(JarFile jarFile, String jarEntryName, File targetFile) throws IOException {
-        byte[] data = new byte[1024];
-        ZipEntry entry = jarFile.getEntry(jarEntryName);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * the per thread buffers used to copy streams, which are reused by all extractions of a thread
+     */
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    public static void extractFile(ZipFile jarFile, String jarEntryName, File targetFile) throws IOException {
+        extractFile(jarFile, jarFile.getEntry(jarEntryName), targetFile);
+    }
+
+    /**
+     * Extracts a zip entry. The target file is replaced, and not written through, if it exists.
+     *
+     * @param zipFile the zip file
+     * @param entry the zip entry
+     * @param targetFile the target file, or dir if the entry is a dir
+     * @throws IOException
+     */
+    public static void extractFile(ZipFile zipFile, ZipEntry entry, File targetFile) throws IOException {
         if (entry.isDirectory()) { // if its a directory, create it
             targetFile.mkdirs();
             return;
         }
-        File parent = targetFile.getParentFile();
-        if (!parent.exists()) {
-            parent.mkdirs();
-        }
-        try (FileOutputStream fos = new java.io.FileOutputStream(targetFile); InputStream is = jarFile.getInputStream(entry)) {
-            int read;
-            while ((read = is.read(data)) > 0) {  // write contents of 'is' to 'fos'
-                fos.write(data, 0, read);
-            }
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            copyFile(in, entry.getSize(), targetFile);
         }
     }
 
@@ -63,9 +78,7 @@ public class FileUtils {
                     if (!entry.isDirectory()) {
                         String entryName = entry.getName();
                         if (outputDirectory != null && entryName.startsWith("schema/")) {
-                            try (InputStream in = zip.getInputStream(entry)) {
-                                FileUtils.copyFile(in, new File(outputDirectory, entryName.substring("schema/".length())));
-                            }
+                            extractFile(zip, entry, new File(outputDirectory, entryName.substring("schema/".length())));
                         }
                     }
                 }
@@ -74,8 +87,44 @@ public class FileUtils {
     }
 
     public static void copyFile(final InputStream in, final File dest) throws IOException {
-        dest.getParentFile().mkdirs();
-        Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        copyFile(in, -1, dest);
+    }
+
+    /**
+     * Copies a stream to a file, which is replaced if it exists. Content up to the buffer size, and of known size, is
+     * written at once.
+     *
+     * @param in the input stream, which is not closed
+     * @param size the stream size, -1 if unknown
+     * @param dest the target file
+     * @throws IOException
+     */
+    private static void copyFile(final InputStream in, final long size, final File dest) throws IOException {
+        final File parent = dest.getParentFile();
+        if (!parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        // replace the file, a link would otherwise be written through
+        Files.deleteIfExists(dest.toPath());
+        final byte[] buffer = BUFFERS.get();
+        try (OutputStream out = Files.newOutputStream(dest.toPath())) {
+            if (size >= 0 && size <= buffer.length) {
+                // fill the buffer, and write it once
+                int length = 0;
+                int read;
+                while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += read;
+                }
+                out.write(buffer, 0, length);
+                if (length < buffer.length) {
+                    return;
+                }
+            }
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
     }
 
     public static void copyFile(final File src, final File dest) throws IOException {
@@ -90,15 +139,22 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Reads a stream's content, decoded as UTF-8.
+     *
+     * @param file the input stream, which is closed
+     * @return the content
+     */
     public static String readFile(InputStream file) {
-        try (BufferedInputStream stream = new BufferedInputStream(file)) {
-            byte[] buff = new byte[1024];
-            StringBuilder builder = new StringBuilder();
-            int read = -1;
-            while ((read = stream.read(buff)) != -1) {
-                builder.append(new String(buff, 0, read));
+        try (InputStream stream = file) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = BUFFERS.get();
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
             }
-            return builder.toString();
+            // decode all bytes at once, a multi byte char may otherwise be split
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A table of canonical instances of immutable values, so equal values parsed or read many times, such as the
+ * artifacts and module identifiers of thousands of modules, share one instance, compared by identity first.
+ * <p>
+ * The canonical instances are weakly referenced, and dropped from the table once no longer used.
+ * <p>
+ * This class is thread safe, the table is split in segments, each with its own lock, so concurrent parsers seldom
+ * contend.
+ *
+ * @param <T> the type of the values, which must be immutable
+ */
+public class Interner<T> {
+
+    private static final int SEGMENTS = 32;
+
+    private final Segment<T>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public Interner() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    /**
+     *
+     * @param value the value
+     * @return the canonical instance equal to the value, which is the value itself if there was none
+     */
+    public T intern(T value) {
+        int hash = value.hashCode();
+        // spread the high bits, the segment is selected by the low ones
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)].intern(value);
+    }
+
+    private static class Segment<T> {
+
+        private final Map<T, WeakReference<T>> instances = new WeakHashMap<>();
+
+        private synchronized T intern(T value) {
+            final WeakReference<T> reference = instances.get(value);
+            if (reference != null) {
+                final T instance = reference.get();
+                if (instance != null) {
+                    return instance;
+                }
+            }
+            instances.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+}
@@ -19,24 +19,36 @@ package org.wildfly.build.util;
 import org.wildfly.build.ArtifactResolver;
 import org.wildfly.build.pack.model.Artifact;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
+ * Resolves artifact coordinates, e.g. {@code groupId:artifactId}, to the JBoss Modules string of the versioned artifact.
+ * The properties resolved are memoized, a resolver being used for all modules of a feature pack.
+ *
  * @author Eduardo Martins
  */
 public class ModuleArtifactPropertyResolver implements PropertyResolver {
 
     private final ArtifactResolver artifactResolver;
 
+    private final ConcurrentMap<String, String> resolved = new ConcurrentHashMap<>();
+
     public ModuleArtifactPropertyResolver(ArtifactResolver artifactResolver) {
         this.artifactResolver = artifactResolver;
     }
 
     @Override
     public String resolveProperty(String property) {
-        Artifact artifact = artifactResolver.getArtifact(Artifact.parse(property));
-        if (artifact != null) {
-            return artifact.toJBossModulesString();
-        } else {
-            return null;
+        String value = resolved.get(property);
+        if (value == null) {
+            Artifact artifact = artifactResolver.getArtifact(Artifact.parse(property));
+            if (artifact == null) {
+                return null;
+            }
+            value = artifact.toJBossModulesString();
+            resolved.putIfAbsent(property, value);
         }
+        return value;
     }
 }
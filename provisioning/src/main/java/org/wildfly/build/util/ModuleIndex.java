@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import org.wildfly.build.pack.model.ModuleIdentifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * A binary index of the module.xml files of a feature pack, written when the feature pack is built, which allows
+ * provisioning to know the modules identifiers, dependencies and artifacts without parsing each module.xml.
+ * <p>
+ * Each indexed module records the CRC and size of its module.xml, and an index entry should only be used if these
+ * match the feature pack's module.xml. The index is versioned, and ends with the CRC of its content.
+ */
+public class ModuleIndex {
+
+    private static final int MAGIC = 0x57464d49;
+
+    private static final int VERSION = 2;
+
+    /**
+     * Writes an index.
+     *
+     * @param entries the index entries
+     * @param out     the output stream, which is not closed
+     * @throws IOException
+     */
+    public static void write(Collection<Entry> entries, OutputStream out) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(entries.size());
+        for (Entry entry : entries) {
+            final ModuleParseResult result = entry.moduleParseResult;
+            data.writeUTF(entry.moduleFile);
+            data.writeLong(entry.crc);
+            data.writeLong(entry.size);
+            writeModuleIdentifier(result.identifier, data);
+            writeArtifactName(result.versionArtifactName, data);
+            data.writeInt(result.dependencies.size());
+            for (ModuleParseResult.ModuleDependency dependency : result.dependencies) {
+                writeModuleIdentifier(dependency.getModuleId(), data);
+                data.writeBoolean(dependency.isOptional());
+            }
+            data.writeInt(result.resourceRoots.size());
+            for (String resourceRoot : result.resourceRoots) {
+                data.writeUTF(resourceRoot);
+            }
+            data.writeInt(result.artifacts.size());
+            for (ModuleParseResult.ArtifactName artifactName : result.artifacts) {
+                writeArtifactName(artifactName, data);
+            }
+        }
+        data.flush();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        data.writeLong(crc.getValue());
+        data.flush();
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Reads an index.
+     *
+     * @param in the input stream, which is not closed
+     * @return the index entries, by module.xml file name
+     * @throws IOException if the index could not be read, is of an unknown version, or is corrupted
+     */
+    public static Map<String, Entry> read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        final byte[] bytes = out.toByteArray();
+        if (bytes.length < 8) {
+            throw new IOException("Invalid module index");
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+            throw new IOException("Module index checksum mismatch");
+        }
+        final DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Invalid module index");
+        }
+        final int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported module index version " + version);
+        }
+        final int size = data.readInt();
+        final Map<String, Entry> entries = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            final String moduleFile = data.readUTF();
+            final long entryCrc = data.readLong();
+            final long entrySize = data.readLong();
+            final ModuleParseResult result = new ModuleParseResult();
+            result.identifier = readModuleIdentifier(data);
+            result.versionArtifactName = readArtifactName(data);
+            final int dependencies = data.readInt();
+            for (int j = 0; j < dependencies; j++) {
+                result.dependencies.add(new ModuleParseResult.ModuleDependency(readModuleIdentifier(data), data.readBoolean()));
+            }
+            final int resourceRoots = data.readInt();
+            for (int j = 0; j < resourceRoots; j++) {
+                result.resourceRoots.add(data.readUTF());
+            }
+            final int artifacts = data.readInt();
+            for (int j = 0; j < artifacts; j++) {
+                result.artifacts.add(readArtifactName(data));
+            }
+            entries.put(moduleFile, new Entry(moduleFile, entryCrc, entrySize, result));
+        }
+        return entries;
+    }
+
+    private static void writeModuleIdentifier(ModuleIdentifier identifier, DataOutputStream data) throws IOException {
+        data.writeUTF(identifier.getName());
+        data.writeUTF(identifier.getSlot());
+    }
+
+    private static ModuleIdentifier readModuleIdentifier(DataInputStream data) throws IOException {
+        return new ModuleIdentifier(data.readUTF(), data.readUTF()).intern();
+    }
+
+    private static void writeArtifactName(ModuleParseResult.ArtifactName artifactName, DataOutputStream data) throws IOException {
+        data.writeBoolean(artifactName != null);
+        if (artifactName != null) {
+            data.writeUTF(artifactName.getArtifactCoords());
+            data.writeBoolean(artifactName.getOptions() != null);
+            if (artifactName.getOptions() != null) {
+                data.writeUTF(artifactName.getOptions());
+            }
+            data.writeUTF(artifactName.getValue());
+        }
+    }
+
+    private static ModuleParseResult.ArtifactName readArtifactName(DataInputStream data) throws IOException {
+        if (!data.readBoolean()) {
+            return null;
+        }
+        final String artifactCoords = data.readUTF();
+        final String options = data.readBoolean() ? data.readUTF() : null;
+        return new ModuleParseResult.ArtifactName(artifactCoords, options, data.readUTF());
+    }
+
+    /**
+     * A module indexed.
+     */
+    public static class Entry {
+
+        private final String moduleFile;
+        private final long crc;
+        private final long size;
+        private final ModuleParseResult moduleParseResult;
+
+        /**
+         *
+         * @param moduleFile the module.xml file name, in the feature pack
+         * @param crc the module.xml CRC
+         * @param size the module.xml size
+         * @param moduleParseResult the module.xml parse result
+         */
+        public Entry(String moduleFile, long crc, long size, ModuleParseResult moduleParseResult) {
+            this.moduleFile = moduleFile;
+            this.crc = crc;
+            this.size = size;
+            this.moduleParseResult = moduleParseResult;
+        }
+
+        public String getModuleFile() {
+            return moduleFile;
+        }
+
+        /**
+         *
+         * @return the module parse result
+         */
+        public ModuleParseResult getModuleParseResult() {
+            return moduleParseResult;
+        }
+
+        /**
+         *
+         * @param zipEntry the module.xml zip entry
+         * @return true if the index entry was created from the same module.xml
+         */
+        public boolean matches(ZipEntry zipEntry) {
+            return zipEntry != null && zipEntry.getCrc() == crc && zipEntry.getSize() == size;
+        }
+    }
+}
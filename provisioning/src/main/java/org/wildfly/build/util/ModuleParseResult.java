@@ -19,9 +19,6 @@ package org.wildfly.build.util;
 import java.util.ArrayList;
 import java.util.List;
 
-import nu.xom.Attribute;
-import nu.xom.Document;
-
 import org.wildfly.build.pack.model.Artifact;
 import org.wildfly.build.pack.model.ModuleIdentifier;
 
@@ -32,14 +29,9 @@ public class ModuleParseResult {
     final List<ModuleDependency> dependencies = new ArrayList<ModuleDependency>();
     final List<String> resourceRoots = new ArrayList<>();
     final List<ArtifactName> artifacts = new ArrayList<>();
-    final Document document;
     ModuleIdentifier identifier;
     ArtifactName versionArtifactName;
 
-    public ModuleParseResult(final Document document) {
-        this.document = document;
-    }
-
     public List<ModuleDependency> getDependencies() {
         return dependencies;
     }
@@ -56,10 +48,6 @@ public class ModuleParseResult {
         return identifier;
     }
 
-    public Document getDocument() {
-        return document;
-    }
-
     public ArtifactName getVersionArtifactName() {
         return versionArtifactName;
     }
@@ -91,12 +79,13 @@ public class ModuleParseResult {
 
         private final String artifactCoords;
         private final String options;
-        private final Attribute attribute;
+        private final String value;
+        private Artifact artifact;
 
-        public ArtifactName(String artifactCoords, String options, final Attribute attribute) {
+        public ArtifactName(String artifactCoords, String options, final String value) {
             this.artifactCoords = artifactCoords;
             this.options = options;
-            this.attribute = attribute;
+            this.value = value;
         }
 
         public String getArtifactCoords() {
@@ -107,8 +96,12 @@ public class ModuleParseResult {
             return options;
         }
 
-        public Attribute getAttribute() {
-            return attribute;
+        /**
+         *
+         * @return the module.xml attribute value which defines the artifact
+         */
+        public String getValue() {
+            return value;
         }
 
         public String getJBossModulesArtifactString() {
@@ -139,8 +132,17 @@ public class ModuleParseResult {
             return getArtifact().getVersion() != null;
         }
 
+        /**
+         *
+         * @return the artifact, parsed on first use
+         */
         public Artifact getArtifact() {
-            return Artifact.parse(getArtifactCoords());
+            Artifact artifact = this.artifact;
+            if (artifact == null) {
+                artifact = Artifact.parse(getArtifactCoords());
+                this.artifact = artifact;
+            }
+            return artifact;
         }
     }
 }
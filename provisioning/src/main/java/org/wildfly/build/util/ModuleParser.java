@@ -15,14 +15,12 @@
  */
 package org.wildfly.build.util;
 
-import nu.xom.Attribute;
-import nu.xom.Builder;
-import nu.xom.Document;
-import nu.xom.Element;
-import nu.xom.Elements;
-import nu.xom.ParsingException;
 import org.wildfly.build.pack.model.ModuleIdentifier;
+import org.wildfly.build.util.xml.XMLFactories;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -46,93 +44,144 @@ public class ModuleParser {
      */
     private static final Pattern JBOSS_MODULES_VALID_PATTERN = Pattern.compile("^([-_a-zA-Z0-9.]+):([-_a-zA-Z0-9.]+):([-_a-zA-Z0-9.]+)(?::([-_a-zA-Z0-9.]+))?$");
 
-    public static ModuleParseResult parse(Path inputFile) throws IOException, ParsingException {
+    public static ModuleParseResult parse(Path inputFile) throws IOException, XMLStreamException {
         return parse(new BufferedInputStream(new FileInputStream(inputFile.toFile())));
     }
 
-    public static ModuleParseResult parse(final InputStream in) throws IOException, ParsingException {
-        Builder builder = new Builder(false);
-        final Document document;
+    public static ModuleParseResult parse(final InputStream in) throws IOException, XMLStreamException {
+        final ModuleParseResult result = new ModuleParseResult();
         try (InputStream in1 = in) {
-            document = builder.build(in1);
-        }
-        ModuleParseResult result = new ModuleParseResult(document);
-        final Element rootElement = document.getRootElement();
-        if (rootElement.getLocalName().equals("module-alias")) {
-            parseModuleAlias(rootElement, result);
-        } else if (rootElement.getLocalName().equals("module")) {
-            parseModule(rootElement, result);
+            final XMLStreamReader reader = XMLFactories.getInputFactory().createXMLStreamReader(in1);
+            try {
+                if (nextChildElement(reader)) {
+                    if (reader.getLocalName().equals("module-alias")) {
+                        parseModuleAlias(reader, result);
+                    } else if (reader.getLocalName().equals("module")) {
+                        parseModule(reader, result);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
         }
         return result;
     }
 
-    private static void parseModule(Element element, ModuleParseResult result) {
-        String name = element.getAttributeValue("name");
-        String slot = getOptionalAttributeValue(element, "slot", "main");
-        result.identifier = new ModuleIdentifier(name, slot);
-        final Attribute versionAttribute = element.getAttribute("version");
-        if (versionAttribute != null) {
-            result.versionArtifactName = parseOptionalArtifactName(versionAttribute.getValue(), versionAttribute);
+    /**
+     * Moves the reader to the next child element of the current element, skipping any other content.
+     *
+     * @return true if the reader is at the start of a child element, false if at the end of the current element
+     */
+    static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    return true;
+                case XMLStreamReader.END_ELEMENT:
+                    return false;
+            }
         }
-        final Element dependencies = element.getFirstChildElement("dependencies", element.getNamespaceURI());
-        if (dependencies != null) parseDependencies(dependencies, result);
-        final Element resources = element.getFirstChildElement("resources", element.getNamespaceURI());
-        if (resources != null) parseResources(resources, result);
+        return false;
     }
 
-    private static String getOptionalAttributeValue(Element element, String name, String defVal) {
-        final String value = element.getAttributeValue(name);
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            skipElement(reader);
+        }
+    }
+
+    /**
+     *
+     * @return true if the element is a module's dependencies element
+     */
+    static boolean isDependenciesElement(QName element, QName moduleElement) {
+        return element.getLocalPart().equals("dependencies") && element.getNamespaceURI().equals(moduleElement.getNamespaceURI());
+    }
+
+    /**
+     *
+     * @return true if the element is a module's resources element
+     */
+    static boolean isResourcesElement(QName element, QName moduleElement) {
+        return element.getLocalPart().equals("resources") && element.getNamespaceURI().equals(moduleElement.getNamespaceURI());
+    }
+
+    private static void parseModule(XMLStreamReader reader, ModuleParseResult result) throws XMLStreamException {
+        final QName moduleElement = reader.getName();
+        String name = reader.getAttributeValue(null, "name");
+        String slot = getOptionalAttributeValue(reader, "slot", "main");
+        result.identifier = new ModuleIdentifier(name, slot).intern();
+        final String version = reader.getAttributeValue(null, "version");
+        if (version != null) {
+            result.versionArtifactName = parseOptionalArtifactName(version);
+        }
+        boolean dependencies = false;
+        boolean resources = false;
+        while (nextChildElement(reader)) {
+            if (!dependencies && isDependenciesElement(reader.getName(), moduleElement)) {
+                parseDependencies(reader, result);
+                dependencies = true;
+            } else if (!resources && isResourcesElement(reader.getName(), moduleElement)) {
+                parseResources(reader, result);
+                resources = true;
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static String getOptionalAttributeValue(XMLStreamReader reader, String name, String defVal) {
+        final String value = reader.getAttributeValue(null, name);
         return value == null ? defVal : value;
     }
 
-    private static void parseModuleAlias(Element element, ModuleParseResult result) {
-        final String targetName = getOptionalAttributeValue(element, "target-name", "");
-        final String targetSlot = getOptionalAttributeValue(element, "target-slot", "main");
-        final String name = element.getAttributeValue("name");
-        final String slot = getOptionalAttributeValue(element, "slot", "main");
-        ModuleIdentifier moduleId = new ModuleIdentifier(targetName, targetSlot);
-        result.identifier = new ModuleIdentifier(name, slot);
+    private static void parseModuleAlias(XMLStreamReader reader, ModuleParseResult result) throws XMLStreamException {
+        final String targetName = getOptionalAttributeValue(reader, "target-name", "");
+        final String targetSlot = getOptionalAttributeValue(reader, "target-slot", "main");
+        final String name = reader.getAttributeValue(null, "name");
+        final String slot = getOptionalAttributeValue(reader, "slot", "main");
+        ModuleIdentifier moduleId = new ModuleIdentifier(targetName, targetSlot).intern();
+        result.identifier = new ModuleIdentifier(name, slot).intern();
         result.dependencies.add(new ModuleParseResult.ModuleDependency(moduleId, false));
+        skipElement(reader);
     }
 
-    private static void parseDependencies(Element element, ModuleParseResult result) {
-        final Elements modules = element.getChildElements("module", element.getNamespaceURI());
-        final int size = modules.size();
-        for (int i = 0; i < size; i ++) {
-            final Element moduleElement = modules.get(i);
-            String name = getOptionalAttributeValue(moduleElement, "name", "");
-            String slot = getOptionalAttributeValue(moduleElement, "slot", "main");
-            boolean optional = Boolean.parseBoolean(getOptionalAttributeValue(moduleElement, "optional", "false"));
-            ModuleIdentifier moduleId = new ModuleIdentifier(name, slot);
-            result.dependencies.add(new ModuleParseResult.ModuleDependency(moduleId, optional));
+    private static void parseDependencies(XMLStreamReader reader, ModuleParseResult result) throws XMLStreamException {
+        final String namespaceURI = reader.getName().getNamespaceURI();
+        while (nextChildElement(reader)) {
+            if (reader.getLocalName().equals("module") && reader.getName().getNamespaceURI().equals(namespaceURI)) {
+                String name = getOptionalAttributeValue(reader, "name", "");
+                String slot = getOptionalAttributeValue(reader, "slot", "main");
+                boolean optional = Boolean.parseBoolean(getOptionalAttributeValue(reader, "optional", "false"));
+                ModuleIdentifier moduleId = new ModuleIdentifier(name, slot).intern();
+                result.dependencies.add(new ModuleParseResult.ModuleDependency(moduleId, optional));
+            }
+            skipElement(reader);
         }
     }
 
-    private static void parseResources(Element element, ModuleParseResult result) {
-        final Elements children = element.getChildElements();
-        final int size = children.size();
-        for (int i = 0; i < size; i ++) {
-            final Element child = children.get(i);
-            switch (child.getLocalName()) {
+    private static void parseResources(XMLStreamReader reader, ModuleParseResult result) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
                 case "resource-root": {
-                    String path = child.getAttributeValue("path");
+                    String path = reader.getAttributeValue(null, "path");
                     if (path != null) result.resourceRoots.add(path);
                     break;
                 }
                 case "artifact": {
-                    final Attribute attribute = child.getAttribute("name");
-                    if (attribute != null) {
-                        final String nameStr = attribute.getValue();
-                        result.artifacts.add(parseArtifactName(nameStr, attribute));
-                        break;
+                    final String nameStr = reader.getAttributeValue(null, "name");
+                    if (nameStr != null) {
+                        result.artifacts.add(parseArtifactName(nameStr));
                     }
+                    break;
                 }
             }
+            skipElement(reader);
         }
     }
 
-    private static ModuleParseResult.ArtifactName parseArtifactName(String artifactName, final Attribute attribute) {
-        final ModuleParseResult.ArtifactName name = parseOptionalArtifactName(artifactName, attribute);
+    private static ModuleParseResult.ArtifactName parseArtifactName(String artifactName) {
+        final ModuleParseResult.ArtifactName name = parseOptionalArtifactName(artifactName);
         if (name == null) {
             //this happens if the artifact is not enclosed in a ${} match
             //we still support this, as long as a hard coded version is present
@@ -150,14 +199,14 @@ public class ModuleParser {
                     sb.append(matcher.group(4));
                 }
                 sb.append(":").append(matcher.group(3));
-                return new ModuleParseResult.ArtifactName(sb.toString(), null, attribute);
+                return new ModuleParseResult.ArtifactName(sb.toString(), null, artifactName);
             }
-            return new ModuleParseResult.ArtifactName(artifactName, null, attribute);
+            return new ModuleParseResult.ArtifactName(artifactName, null, artifactName);
         }
         return name;
     }
 
-    private static ModuleParseResult.ArtifactName parseOptionalArtifactName(String artifactName, final Attribute attribute) {
+    private static ModuleParseResult.ArtifactName parseOptionalArtifactName(String artifactName) {
         if (artifactName.startsWith("${") && artifactName.endsWith("}")) {
             String ct = artifactName.substring(2, artifactName.length() - 1);
             String options = null;
@@ -167,7 +216,7 @@ public class ModuleParser {
                 options = split[1];
                 artifactCoords = split[0];
             }
-            return new ModuleParseResult.ArtifactName(artifactCoords, options, attribute);
+            return new ModuleParseResult.ArtifactName(artifactCoords, options, artifactName);
         } else {
             return null;
         }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import org.wildfly.build.util.xml.XMLFactories;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.DTD;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Rewrites a module.xml in a single pass, from an input stream to an output stream, without building a document.
+ * <p>
+ * The artifacts are matched with the ones of the module's {@link ModuleParseResult}, in the same order, and the
+ * module's artifact elements either get a new name, or are replaced by resource root elements.
+ */
+public class ModuleXmlRewriter {
+
+    private final List<String> artifactValues;
+    private final boolean resourceRoots;
+    private final String version;
+
+    /**
+     *
+     * @param artifactValues the new values of the module's artifacts, in the order of {@link ModuleParseResult#getArtifacts()}, a null value keeping the artifact unchanged
+     * @param resourceRoots if true the artifacts are replaced by resource roots, with the artifact values as paths
+     * @param version the new module version, null to keep the version unchanged
+     */
+    public ModuleXmlRewriter(List<String> artifactValues, boolean resourceRoots, String version) {
+        this.artifactValues = artifactValues;
+        this.resourceRoots = resourceRoots;
+        this.version = version;
+    }
+
+    /**
+     * Writes the rewritten module.xml, encoded as UTF-8.
+     *
+     * @param in the module.xml, which is closed once read
+     * @param out the output stream, which is not closed
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void rewrite(InputStream in, OutputStream out) throws IOException, XMLStreamException {
+        try (InputStream in1 = in) {
+            final XMLEventReader reader = XMLFactories.getInputFactory().createXMLEventReader(in1);
+            final XMLStreamWriter writer = XMLFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8");
+            try {
+                rewrite(reader, writer);
+                writer.flush();
+            } finally {
+                writer.close();
+                reader.close();
+            }
+        }
+    }
+
+    private void rewrite(XMLEventReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int depth = 0;
+        QName moduleElement = null;
+        boolean resourcesFound = false;
+        boolean inResources = false;
+        int artifactIndex = 0;
+        while (reader.hasNext()) {
+            final XMLEvent event = reader.nextEvent();
+            switch (event.getEventType()) {
+                case XMLEvent.START_DOCUMENT:
+                    writer.writeStartDocument("UTF-8", "1.0");
+                    writer.writeCharacters("\n");
+                    break;
+                case XMLEvent.START_ELEMENT: {
+                    final StartElement element = event.asStartElement();
+                    depth++;
+                    String localName = element.getName().getLocalPart();
+                    String attributeName = null;
+                    String attributeValue = null;
+                    boolean resourceRoot = false;
+                    if (depth == 1) {
+                        moduleElement = element.getName();
+                        if (version != null && localName.equals("module")) {
+                            attributeName = "version";
+                            attributeValue = version;
+                        }
+                    } else if (depth == 2 && !resourcesFound && moduleElement.getLocalPart().equals("module") && ModuleParser.isResourcesElement(element.getName(), moduleElement)) {
+                        resourcesFound = true;
+                        inResources = true;
+                    } else if (depth == 3 && inResources && localName.equals("artifact") && element.getAttributeByName(new QName("name")) != null) {
+                        final String artifactValue = artifactIndex < artifactValues.size() ? artifactValues.get(artifactIndex) : null;
+                        artifactIndex++;
+                        if (artifactValue != null) {
+                            attributeName = "name";
+                            attributeValue = artifactValue;
+                            if (resourceRoots) {
+                                localName = "resource-root";
+                                resourceRoot = true;
+                            }
+                        }
+                    }
+                    // write empty elements as such
+                    final boolean empty = reader.peek() != null && reader.peek().isEndElement();
+                    if (empty) {
+                        reader.nextEvent();
+                        if (depth == 2) {
+                            inResources = false;
+                        }
+                        depth--;
+                        writer.writeEmptyElement(element.getName().getPrefix(), localName, element.getName().getNamespaceURI());
+                    } else {
+                        writer.writeStartElement(element.getName().getPrefix(), localName, element.getName().getNamespaceURI());
+                    }
+                    writeNamespaces(element, writer);
+                    writeAttributes(element, attributeName, attributeValue, resourceRoot, writer);
+                    if (empty) {
+                        writeEndOfTopLevelNode(depth, writer);
+                    }
+                    break;
+                }
+                case XMLEvent.END_ELEMENT:
+                    if (depth == 2) {
+                        inResources = false;
+                    }
+                    depth--;
+                    writer.writeEndElement();
+                    writeEndOfTopLevelNode(depth, writer);
+                    break;
+                case XMLEvent.CHARACTERS:
+                case XMLEvent.SPACE:
+                case XMLEvent.CDATA: {
+                    final Characters characters = event.asCharacters();
+                    if (depth == 0) {
+                        // top level white space is replaced by line breaks
+                        break;
+                    }
+                    if (characters.isCData()) {
+                        writer.writeCData(characters.getData());
+                    } else {
+                        writer.writeCharacters(characters.getData());
+                    }
+                    break;
+                }
+                case XMLEvent.COMMENT:
+                    writer.writeComment(((Comment) event).getText());
+                    writeEndOfTopLevelNode(depth, writer);
+                    break;
+                case XMLEvent.PROCESSING_INSTRUCTION: {
+                    final ProcessingInstruction processingInstruction = (ProcessingInstruction) event;
+                    if (processingInstruction.getData() != null) {
+                        writer.writeProcessingInstruction(processingInstruction.getTarget(), processingInstruction.getData());
+                    } else {
+                        writer.writeProcessingInstruction(processingInstruction.getTarget());
+                    }
+                    writeEndOfTopLevelNode(depth, writer);
+                    break;
+                }
+                case XMLEvent.DTD:
+                    writer.writeDTD(((DTD) event).getDocumentTypeDeclaration());
+                    writeEndOfTopLevelNode(depth, writer);
+                    break;
+                case XMLEvent.END_DOCUMENT:
+                    writer.writeEndDocument();
+                    break;
+            }
+        }
+    }
+
+    private static void writeEndOfTopLevelNode(int depth, XMLStreamWriter writer) throws XMLStreamException {
+        if (depth == 0) {
+            writer.writeCharacters("\n");
+        }
+    }
+
+    private static void writeNamespaces(StartElement element, XMLStreamWriter writer) throws XMLStreamException {
+        final Iterator<?> namespaces = element.getNamespaces();
+        while (namespaces.hasNext()) {
+            final Namespace namespace = (Namespace) namespaces.next();
+            if (namespace.isDefaultNamespaceDeclaration()) {
+                writer.setDefaultNamespace(namespace.getNamespaceURI());
+                writer.writeDefaultNamespace(namespace.getNamespaceURI());
+            } else {
+                writer.setPrefix(namespace.getPrefix(), namespace.getNamespaceURI());
+                writer.writeNamespace(namespace.getPrefix(), namespace.getNamespaceURI());
+            }
+        }
+    }
+
+    /**
+     * Writes the element's attributes, with the specified attribute value replaced, and renamed to path if the element
+     * was converted to a resource root.
+     */
+    private static void writeAttributes(StartElement element, String attributeName, String attributeValue, boolean resourceRoot, XMLStreamWriter writer) throws XMLStreamException {
+        final Iterator<?> attributes = element.getAttributes();
+        while (attributes.hasNext()) {
+            final Attribute attribute = (Attribute) attributes.next();
+            final QName name = attribute.getName();
+            String localName = name.getLocalPart();
+            String value = attribute.getValue();
+            if (attributeName != null && name.getNamespaceURI().isEmpty() && localName.equals(attributeName)) {
+                value = attributeValue;
+                if (resourceRoot) {
+                    localName = "path";
+                }
+            }
+            if (name.getNamespaceURI().isEmpty()) {
+                writer.writeAttribute(localName, value);
+            } else {
+                writer.writeAttribute(name.getPrefix(), name.getNamespaceURI(), localName, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of independent tasks, optionally in parallel.
+ * <p>
+ * With a parallelism of {@code 1} the tasks are executed in order on the calling thread. Otherwise the tasks are
+ * executed on a dedicated pool, and the first failure cancels every task still pending or running.
+ */
+public class ParallelTasks {
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    /**
+     * Resolves the parallelism to use, values lower than {@code 1} meaning the number of available processors.
+     *
+     * @param parallelism the requested parallelism
+     * @return the effective parallelism
+     */
+    public static int parallelism(int parallelism) {
+        return parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
+    }
+
+    /**
+     *
+     * @return true if the current thread is a thread of a pool running tasks, where running tasks in parallel again would
+     * multiply the threads
+     */
+    public static boolean isPoolThread() {
+        return Thread.currentThread() instanceof PoolThread;
+    }
+
+    /**
+     *
+     * @param name the name of the work done by the pool, used to name its threads
+     * @return a factory of daemon pool threads, on which {@link #isPoolThread()} is true
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+        return new PoolThreadFactory(name);
+    }
+
+    /**
+     * Executes the specified tasks, and waits for their completion.
+     *
+     * @param name        the name of the work being done, used to name the pool threads
+     * @param parallelism the max number of tasks executed concurrently
+     * @param tasks       the tasks to execute
+     * @throws Exception the failure of the first task that failed
+     */
+    public static void run(String name, int parallelism, List<? extends Callable<?>> tasks) throws Exception {
+        final int threads = Math.min(parallelism(parallelism), tasks.size());
+        if (threads <= 1) {
+            for (Callable<?> task : tasks) {
+                task.call();
+            }
+            return;
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads, newThreadFactory(name));
+        final List<Future<?>> futures = new ArrayList<>(tasks.size());
+        try {
+            final CompletionService<Object> completionService = new ExecutorCompletionService<>(executorService);
+            for (Callable<?> task : tasks) {
+                // the results are discarded, only the failures matter
+                @SuppressWarnings("unchecked")
+                final Callable<Object> callable = (Callable<Object>) task;
+                futures.add(completionService.submit(callable));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    // fail fast
+                    for (Future<?> future : futures) {
+                        future.cancel(true);
+                    }
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            executorService.shutdownNow();
+            awaitTermination(executorService);
+        }
+    }
+
+    /**
+     * Waits for the termination of the tasks still running on a shut down pool, so none outlives the failure of the
+     * run, e.g. writing to output that is about to be discarded, keeping the interrupt status of the current thread.
+     *
+     * @param executorService the shut down pool
+     */
+    public static void awaitTermination(ExecutorService executorService) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class PoolThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        private PoolThreadFactory(String name) {
+            this.prefix = name + "-" + POOL_COUNT.incrementAndGet() + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new PoolThread(r, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class PoolThread extends Thread {
+
+        private PoolThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+}
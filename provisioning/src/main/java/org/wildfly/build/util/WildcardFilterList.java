@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An ordered list of wildcard pattern filters, which finds the first filter matching a path with a
+ * {@link WildcardMatcher} of the filters patterns.
+ * <p>
+ * The matcher is compiled once the list is first matched, i.e. once the model owning the list is built, and discarded
+ * by any change to the list, so it always reflects the list's filters.
+ * <p>
+ * The list may be built by a single thread, and then matched concurrently.
+ *
+ * @param <F> the type of the filters
+ */
+public abstract class WildcardFilterList<F> extends AbstractList<F> implements RandomAccess {
+
+    private final List<F> filters = new ArrayList<>();
+
+    /**
+     * the compiled matcher, null if not compiled since the list last changed
+     */
+    private volatile Compiled compiled;
+
+    /**
+     *
+     * @param filter a filter of the list
+     * @return the filter's wildcard pattern
+     */
+    protected abstract String getPattern(F filter);
+
+    /**
+     *
+     * @param filter a filter of the list
+     * @return true if the filter is matched, false if it is ignored by {@link #getFirstMatch(String)}; all filters are matched by default
+     */
+    protected boolean isMatched(F filter) {
+        return true;
+    }
+
+    /**
+     *
+     * @param path the path to match
+     * @return the first matched filter whose pattern matches the path, null if none matches
+     */
+    public F getFirstMatch(String path) {
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = new Compiled();
+            this.compiled = compiled;
+        }
+        final int index = compiled.matcher.indexOf(path);
+        return index == -1 ? null : compiled.filters.get(index);
+    }
+
+    @Override
+    public F get(int index) {
+        return filters.get(index);
+    }
+
+    @Override
+    public int size() {
+        return filters.size();
+    }
+
+    @Override
+    public void add(int index, F element) {
+        filters.add(index, element);
+        compiled = null;
+    }
+
+    @Override
+    public F set(int index, F element) {
+        final F previous = filters.set(index, element);
+        compiled = null;
+        return previous;
+    }
+
+    @Override
+    public F remove(int index) {
+        final F previous = filters.remove(index);
+        compiled = null;
+        return previous;
+    }
+
+    /**
+     * The matcher of a snapshot of the matched filters, so a change to the list never pairs a matcher with other filters.
+     */
+    private class Compiled {
+
+        private final List<F> filters = new ArrayList<>();
+        private final WildcardMatcher matcher;
+
+        private Compiled() {
+            final List<String> patterns = new ArrayList<>();
+            for (F filter : WildcardFilterList.this.filters) {
+                if (isMatched(filter)) {
+                    filters.add(filter);
+                    patterns.add(getPattern(filter));
+                }
+            }
+            this.matcher = new WildcardMatcher(patterns);
+        }
+    }
+}
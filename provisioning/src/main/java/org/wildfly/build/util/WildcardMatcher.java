@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util;
+
+import org.wildfly.build.util.xml.ParsingUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a path against an ordered list of wildcard patterns, where {@code *} matches any sequence of chars and
+ * {@code ?} any char, and finds the first pattern matching, as if each pattern's
+ * {@link ParsingUtils#wildcardToJavaRegexp(String)} regex was tried in order.
+ * <p>
+ * The literal prefixes of the patterns, i.e. the chars before their first wildcard, are kept in a trie, so a single walk
+ * of the path's chars finds the only patterns which may match, and only the remainder of these is then matched. The
+ * few patterns with chars which are regex syntax after conversion, i.e. {@code |} and {@code \}, are matched with their
+ * regex.
+ * <p>
+ * This class is thread safe.
+ */
+public class WildcardMatcher {
+
+    private final int size;
+
+    private final Node root = new Node();
+
+    /**
+     * the patterns matched with a regex, in the patterns order
+     */
+    private final List<RegexRule> regexRules = new ArrayList<>();
+
+    /**
+     *
+     * @param patterns the wildcard patterns, in the order these are matched
+     */
+    public WildcardMatcher(List<String> patterns) {
+        this.size = patterns.size();
+        for (int index = 0; index < patterns.size(); index++) {
+            final String pattern = patterns.get(index);
+            if (pattern.indexOf('|') != -1 || pattern.indexOf('\\') != -1) {
+                regexRules.add(new RegexRule(index, Pattern.compile(ParsingUtils.wildcardToJavaRegexp(pattern))));
+                continue;
+            }
+            int prefixEnd = 0;
+            while (prefixEnd < pattern.length() && pattern.charAt(prefixEnd) != '*' && pattern.charAt(prefixEnd) != '?') {
+                prefixEnd++;
+            }
+            Node node = root;
+            for (int i = 0; i < prefixEnd; i++) {
+                node = node.getOrCreateChild(pattern.charAt(i));
+            }
+            node.rules.add(new Rule(index, pattern.substring(prefixEnd)));
+        }
+    }
+
+    /**
+     *
+     * @return the number of patterns
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param path the path to match
+     * @return the index of the first pattern matching the path, -1 if none matches
+     */
+    public int indexOf(String path) {
+        return indexOf(path, 0);
+    }
+
+    /**
+     *
+     * @param path the path to match
+     * @param fromIndex the index of the first pattern to match
+     * @return the index of the first pattern, at or after fromIndex, matching the path, -1 if none matches
+     */
+    public int indexOf(String path, int fromIndex) {
+        int first = Integer.MAX_VALUE;
+        Node node = root;
+        int offset = 0;
+        while (true) {
+            for (Rule rule : node.rules) {
+                if (rule.index < first && rule.index >= fromIndex && rule.matches(path, offset)) {
+                    first = rule.index;
+                }
+            }
+            if (offset == path.length()) {
+                break;
+            }
+            node = node.getChild(path.charAt(offset));
+            if (node == null) {
+                break;
+            }
+            offset++;
+        }
+        for (RegexRule rule : regexRules) {
+            if (rule.index >= first) {
+                break;
+            }
+            if (rule.index >= fromIndex && rule.pattern.matcher(path).matches()) {
+                first = rule.index;
+                break;
+            }
+        }
+        return first == Integer.MAX_VALUE ? -1 : first;
+    }
+
+    /**
+     *
+     * @param path the path to match
+     * @return true if any pattern matches the path
+     */
+    public boolean matches(String path) {
+        return indexOf(path) != -1;
+    }
+
+    private static class Node {
+
+        private Map<Character, Node> children;
+
+        private final List<Rule> rules = new ArrayList<>(1);
+
+        private Node getChild(char c) {
+            return children == null ? null : children.get(c);
+        }
+
+        private Node getOrCreateChild(char c) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            Node child = children.get(c);
+            if (child == null) {
+                child = new Node();
+                children.put(c, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * A pattern's remainder, once its literal prefix was matched.
+     */
+    private static class Rule {
+
+        private final int index;
+        private final String remainder;
+        /**
+         * the literal chars after the remainder's last '*', null if there are none, or these contain a '?'
+         */
+        private final String suffix;
+
+        private Rule(int index, String remainder) {
+            this.index = index;
+            this.remainder = remainder;
+            final String suffix = remainder.substring(remainder.lastIndexOf('*') + 1);
+            this.suffix = remainder.indexOf('*') != -1 && !suffix.isEmpty() && suffix.indexOf('?') == -1 ? suffix : null;
+        }
+
+        private boolean matches(String path, int offset) {
+            if (remainder.isEmpty()) {
+                return offset == path.length();
+            }
+            if (suffix != null && (path.length() - offset < suffix.length() || !path.endsWith(suffix))) {
+                return false;
+            }
+            return matchesWildcards(remainder, path, offset);
+        }
+    }
+
+    private static class RegexRule {
+
+        private final int index;
+        private final Pattern pattern;
+
+        private RegexRule(int index, Pattern pattern) {
+            this.index = index;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * Matches a path with a wildcard pattern, backtracking to the last '*' only. As with the regex '.', wildcards do not
+     * match line terminators.
+     */
+    private static boolean matchesWildcards(String pattern, String path, int offset) {
+        int patternIndex = 0;
+        int pathIndex = offset;
+        int starIndex = -1;
+        int starPathIndex = 0;
+        while (pathIndex < path.length()) {
+            if (patternIndex < pattern.length()) {
+                final char c = pattern.charAt(patternIndex);
+                if (c == '*') {
+                    starIndex = patternIndex++;
+                    starPathIndex = pathIndex;
+                    continue;
+                }
+                if (c == '?' ? !isLineTerminator(path.charAt(pathIndex)) : c == path.charAt(pathIndex)) {
+                    patternIndex++;
+                    pathIndex++;
+                    continue;
+                }
+            }
+            if (starIndex == -1 || isLineTerminator(path.charAt(starPathIndex))) {
+                return false;
+            }
+            // the last '*' matches one more char
+            patternIndex = starIndex + 1;
+            pathIndex = ++starPathIndex;
+        }
+        while (patternIndex < pattern.length() && pattern.charAt(patternIndex) == '*') {
+            patternIndex++;
+        }
+        return patternIndex == pattern.length();
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -17,10 +17,10 @@
 package org.wildfly.build.util;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * @author Eduardo Martins
@@ -28,21 +28,82 @@ import java.util.zip.ZipFile;
 public class ZipEntryInputStreamSource implements InputStreamSource {
 
     private final File file;
+    private final String zipEntryName;
     private final ZipEntry zipEntry;
+    private final ArchiveRegistry archiveRegistry;
 
     public ZipEntryInputStreamSource(File file, ZipEntry zipEntry) {
+        this(file, zipEntry, new ArchiveRegistry(0));
+    }
+
+    /**
+     *
+     * @param file the zip file
+     * @param zipEntry the zip entry
+     * @param archiveRegistry the registry used to open the zip file
+     */
+    public ZipEntryInputStreamSource(File file, ZipEntry zipEntry, ArchiveRegistry archiveRegistry) {
         this.file = file;
+        this.zipEntryName = zipEntry.getName();
         this.zipEntry = zipEntry;
+        this.archiveRegistry = archiveRegistry;
+    }
+
+    /**
+     *
+     * @param file the zip file
+     * @param zipEntryName the name of the zip entry, looked up once the input stream is retrieved
+     * @param archiveRegistry the registry used to open the zip file
+     */
+    public ZipEntryInputStreamSource(File file, String zipEntryName, ArchiveRegistry archiveRegistry) {
+        this.file = file;
+        this.zipEntryName = zipEntryName;
+        this.zipEntry = null;
+        this.archiveRegistry = archiveRegistry;
+    }
+
+    /**
+     *
+     * @return the zip file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     *
+     * @return the name of the zip entry
+     */
+    public String getZipEntryName() {
+        return zipEntryName;
+    }
+
+    /**
+     *
+     * @return the zip entry, looked up in the zip file if the source was created with the entry's name only, null if not found
+     * @throws IOException if the zip file could not be opened
+     */
+    public ZipEntry getZipEntry() throws IOException {
+        if (zipEntry != null) {
+            return zipEntry;
+        }
+        try (ArchiveRegistry.Archive archive = archiveRegistry.open(file)) {
+            return archive.getZipFile().getEntry(zipEntryName);
+        }
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
-        final ZipFile zipFile = new ZipFile(file);
+        final ArchiveRegistry.Archive archive = archiveRegistry.open(file);
         try {
-            return new ZipEntryInputStream(zipFile, zipFile.getInputStream(zipEntry));
+            final ZipEntry entry = zipEntry != null ? zipEntry : archive.getZipFile().getEntry(zipEntryName);
+            if (entry == null) {
+                throw new FileNotFoundException(zipEntryName + " not found in " + file);
+            }
+            return new ZipEntryInputStream(archive, archive.getZipFile().getInputStream(entry));
         } catch (Throwable t) {
             try {
-                zipFile.close();
+                archive.close();
             } catch (Throwable ignore) {
 
             }
@@ -52,11 +113,11 @@ public class ZipEntryInputStreamSource implements InputStreamSource {
 
     private static class ZipEntryInputStream extends InputStream {
 
-        private final ZipFile zipFile;
+        private final ArchiveRegistry.Archive archive;
         private final InputStream zipEntryInputStream;
 
-        ZipEntryInputStream(ZipFile zipFile, InputStream zipEntryInputStream) {
-            this.zipFile = zipFile;
+        ZipEntryInputStream(ArchiveRegistry.Archive archive, InputStream zipEntryInputStream) {
+            this.archive = archive;
             this.zipEntryInputStream = zipEntryInputStream;
         }
 
@@ -65,6 +126,16 @@ public class ZipEntryInputStreamSource implements InputStreamSource {
             return zipEntryInputStream.read();
         }
 
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return zipEntryInputStream.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return zipEntryInputStream.skip(n);
+        }
+
         @Override
         public int available() throws IOException {
             return zipEntryInputStream.available();
@@ -76,7 +147,7 @@ public class ZipEntryInputStreamSource implements InputStreamSource {
                 zipEntryInputStream.close();
             } finally {
                 try {
-                    this.zipFile.close();
+                    this.archive.close();
                 } catch (Throwable t) {
                     // ignore
                     t.printStackTrace();
@@ -23,11 +23,10 @@ import org.wildfly.build.pack.model.FeaturePack;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * @author Eduardo Martins
@@ -36,6 +35,20 @@ public class ZipFileSubsystemInputStreamSources implements SubsystemInputStreamS
 
     private final Map<String, ZipEntryInputStreamSource> inputStreamSourceMap = new HashMap<>();
 
+    private final ArchiveRegistry archiveRegistry;
+
+    public ZipFileSubsystemInputStreamSources() {
+        this(new ArchiveRegistry(0));
+    }
+
+    /**
+     *
+     * @param archiveRegistry the registry used to open zip files
+     */
+    public ZipFileSubsystemInputStreamSources(ArchiveRegistry archiveRegistry) {
+        this.archiveRegistry = archiveRegistry;
+    }
+
     /**
      * Creates a zip entry inputstream source and maps it to the specified filename.
      * @param subsystemFileName
@@ -43,7 +56,11 @@ public class ZipFileSubsystemInputStreamSources implements SubsystemInputStreamS
      * @param zipEntry
      */
     public void addSubsystemFileSource(String subsystemFileName, File zipFile, ZipEntry zipEntry) {
-       inputStreamSourceMap.put(subsystemFileName, new ZipEntryInputStreamSource(zipFile, zipEntry));
+       inputStreamSourceMap.put(subsystemFileName, new ZipEntryInputStreamSource(zipFile, zipEntry, archiveRegistry));
+    }
+
+    private void addSubsystemFileSource(String subsystemFileName, File zipFile, String zipEntryName) {
+        inputStreamSourceMap.put(subsystemFileName, new ZipEntryInputStreamSource(zipFile, zipEntryName, archiveRegistry));
     }
 
     /**
@@ -64,18 +81,12 @@ public class ZipFileSubsystemInputStreamSources implements SubsystemInputStreamS
      * @throws IOException
      */
     public void addAllSubsystemFileSourcesFromZipFile(File file) throws IOException {
-        try (ZipFile zip = new ZipFile(file)) {
-            // extract subsystem template and schema, if present
-            if (zip.getEntry("subsystem-templates") != null) {
-                Enumeration<? extends ZipEntry> entries = zip.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    if (!entry.isDirectory()) {
-                        String entryName = entry.getName();
-                        if (entryName.startsWith("subsystem-templates/")) {
-                            addSubsystemFileSource(entryName.substring("subsystem-templates/".length()), file, entry);
-                        }
-                    }
+        // the archive entry index avoids opening zips without subsystem templates
+        final List<String> entryNames = archiveRegistry.getIndexedEntries(file);
+        if (entryNames.contains(ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR)) {
+            for (String entryName : entryNames) {
+                if (entryName.startsWith(ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR) && entryName.length() > ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR.length()) {
+                    addSubsystemFileSource(entryName.substring(ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR.length()), file, entryName);
                 }
             }
         }
@@ -89,13 +100,10 @@ public class ZipFileSubsystemInputStreamSources implements SubsystemInputStreamS
      * @throws IOException
      */
     public boolean addSubsystemFileSourceFromZipFile(String subsystem, File file) throws IOException {
-        try (ZipFile zip = new ZipFile(file)) {
-            String entryName = "subsystem-templates/"+subsystem;
-            ZipEntry entry = zip.getEntry(entryName);
-            if (entry != null) {
-                addSubsystemFileSource(subsystem, file, entry);
-                return true;
-            }
+        String entryName = ArchiveEntryIndex.SUBSYSTEM_TEMPLATES_DIR + subsystem;
+        if (archiveRegistry.getIndexedEntries(file).contains(entryName)) {
+            addSubsystemFileSource(subsystem, file, entryName);
+            return true;
         }
         return false;
     }
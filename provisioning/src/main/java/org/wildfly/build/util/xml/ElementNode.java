@@ -21,7 +21,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.namespace.NamespaceContext;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
@@ -95,7 +94,30 @@ public class ElementNode extends Node {
     public void marshall(XMLStreamWriter writer) throws XMLStreamException {
 //        boolean empty = false;//children.isEmpty()
         boolean empty = isEmpty();
-        NamespaceContext context = writer.getNamespaceContext();
+        marshallStart(writer, empty);
+
+        for (Node child : children) {
+            child.marshall(writer);
+        }
+
+        if (!empty) {
+            try {
+                writer.writeEndElement();
+            } catch(XMLStreamException e) {
+                //TODO REMOVE THIS
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the element's start, with its namespace and attributes, but not its children.
+     *
+     * @param writer the writer
+     * @param empty true if the element has no content, and is written as an empty element, otherwise its end must be written once its content is
+     * @throws XMLStreamException
+     */
+    public void marshallStart(XMLStreamWriter writer, boolean empty) throws XMLStreamException {
         String prefix = writer.getNamespaceContext().getPrefix(namespace);
         if (prefix == null) {
             // Unknown namespace; it becomes default
@@ -120,19 +142,6 @@ public class ElementNode extends Node {
         for (Map.Entry<String, AttributeValue> attr : attributes.entrySet()) {
             writer.writeAttribute(attr.getKey(), attr.getValue().getValue());
         }
-
-        for (Node child : children) {
-            child.marshall(writer);
-        }
-
-        if (!empty) {
-            try {
-                writer.writeEndElement();
-            } catch(XMLStreamException e) {
-                //TODO REMOVE THIS
-                throw e;
-            }
-        }
     }
 
     private boolean isEmpty() {
@@ -97,7 +97,7 @@ public class NodeParser {
         throw new XMLStreamException("Element was not terminated", reader.getLocation());
     }
 
-    private ElementNode createNodeWithAttributesAndNs(XMLStreamReader reader, ElementNode parent) {
+    protected ElementNode createNodeWithAttributesAndNs(XMLStreamReader reader, ElementNode parent) {
         String namespace = reader.getNamespaceURI() != null && reader.getNamespaceURI().length() > 0 ? reader.getNamespaceURI() : namespaceURI;
 
         ElementNode childNode = new ElementNode(parent, reader.getLocalName(), namespace);
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.build.util.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * The StAX factories used by the parsers and writers, looked up and configured once per thread, instead of on each
+ * parse.
+ * <p>
+ * The StAX spec does not require factories to be thread safe, and the JDK's are not, so each thread has its own
+ * factories. A factory must not be reconfigured by its users.
+ */
+public class XMLFactories {
+
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            return inputFactory;
+        }
+    };
+
+    private static final ThreadLocal<XMLInputFactory> NON_VALIDATING_INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+            setIfSupported(inputFactory, XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+            setIfSupported(inputFactory, XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            return inputFactory;
+        }
+    };
+
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY = new ThreadLocal<XMLOutputFactory>() {
+        @Override
+        protected XMLOutputFactory initialValue() {
+            return XMLOutputFactory.newInstance();
+        }
+    };
+
+    private XMLFactories() {
+    }
+
+    /**
+     *
+     * @return the current thread's input factory, which does not coalesce text
+     */
+    public static XMLInputFactory getInputFactory() {
+        return INPUT_FACTORY.get();
+    }
+
+    /**
+     *
+     * @return the current thread's input factory without validation and DTD support, as used by the model parsers
+     */
+    public static XMLInputFactory getNonValidatingInputFactory() {
+        return NON_VALIDATING_INPUT_FACTORY.get();
+    }
+
+    /**
+     *
+     * @return the current thread's output factory
+     */
+    public static XMLOutputFactory getOutputFactory() {
+        return OUTPUT_FACTORY.get();
+    }
+
+    private static void setIfSupported(final XMLInputFactory inputFactory, final String property, final Object value) {
+        if (inputFactory.isPropertySupported(property)) {
+            inputFactory.setProperty(property, value);
+        }
+    }
+}